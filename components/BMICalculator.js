@@ -13,7 +13,7 @@ import {
   Alert,
   Modal,
 } from 'react-native';
-import { useAuth } from '../hooks/useAuth';
+import { authFetch, useAuth } from '../hooks/useAuth';
 
 export default function BMICalculator() {
   const userSession = useAuth();
@@ -67,7 +67,7 @@ export default function BMICalculator() {
     if (!validateInput()) return;
 
     try {
-      const response = await fetch('http://10.11.146.131:8080/bmi', {
+      const response = await authFetch('http://10.11.146.131:8080/bmi', {
         method: 'POST',
         headers: {
           'Content-Type': 'application/json',
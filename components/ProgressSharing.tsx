@@ -1,7 +1,7 @@
 import React, { useState, useEffect } from 'react';
 import { View, Text, TextInput, TouchableOpacity, Image, FlatList, StyleSheet, Modal } from 'react-native';
 import { MaterialCommunityIcons } from '@expo/vector-icons';
-import { useAuth } from '../hooks/useAuth';
+import { authFetch, useAuth } from '../hooks/useAuth';
 import { LinearGradient } from 'expo-linear-gradient';
 import Header from './Header';
 
@@ -14,6 +14,22 @@ interface Post {
   comments: { id: string; text: string; email: string; timestamp: number }[];
 }
 
+interface FeedChange {
+  version: number;
+  type: 'post' | 'like' | 'comment';
+  postId: string;
+  post?: Post;
+  email?: string;
+  comment?: Post['comments'][number];
+}
+
+interface FeedFrame {
+  epoch: string;
+  version: number;
+  resync: boolean;
+  changes?: FeedChange[];
+}
+
 const ProgressSharing = () => {
   const { userSession } = useAuth();
   const [text, setText] = useState('');
@@ -25,11 +41,21 @@ const ProgressSharing = () => {
   const [commentingOn, setCommentingOn] = useState<string | null>(null);
 
   useEffect(() => {
+    // Load the feed once, then apply changes pushed over the /posts/live WebSocket. The epoch and
+    // version of the loaded feed let the server replay whatever happened in between.
+    let socket: WebSocket | null = null;
+    let reconnectTimer: ReturnType<typeof setTimeout> | null = null;
+    let closed = false;
+    let epoch = '';
+    let version = 0;
+
     const fetchPosts = async () => {
       try {
         const response = await fetch('http://10.11.146.131:8080/posts');
         if (response.ok) {
           const fetchedPosts: Post[] = await response.json();
+          epoch = response.headers.get('X-Feed-Epoch') || '';
+          version = Number(response.headers.get('X-Feed-Version') || 0);
           setPosts(fetchedPosts);
           setLoading(false);
         } else {
@@ -41,9 +67,58 @@ const ProgressSharing = () => {
       }
     };
 
-    fetchPosts();
-    const intervalId = setInterval(fetchPosts, 10000);
-    return () => clearInterval(intervalId);
+    const applyChange = (change: FeedChange) => {
+      setPosts((prevPosts) => {
+        switch (change.type) {
+          case 'post':
+            return prevPosts.some((p) => p.id === change.postId) ? prevPosts : [change.post!, ...prevPosts];
+          case 'like':
+            return prevPosts.map((p) =>
+              p.id === change.postId && !p.likes.includes(change.email!) ? { ...p, likes: [...p.likes, change.email!] } : p
+            );
+          case 'comment':
+            return prevPosts.map((p) =>
+              p.id === change.postId && !p.comments.some((c) => c.id === change.comment!.id)
+                ? { ...p, comments: [...p.comments, change.comment!] }
+                : p
+            );
+          default:
+            return prevPosts;
+        }
+      });
+    };
+
+    const connect = () => {
+      socket = new WebSocket(`ws://10.11.146.131:8080/posts/live?since=${version}&epoch=${epoch}`);
+      socket.onmessage = (event) => {
+        const frame: FeedFrame = JSON.parse(event.data);
+        if (frame.resync) {
+          fetchPosts();
+          return;
+        }
+        for (const change of frame.changes || []) {
+          // Changes already in the loaded feed can be replayed.
+          if (change.version > version) {
+            applyChange(change);
+            version = change.version;
+          }
+        }
+      };
+      socket.onclose = () => {
+        if (!closed) {
+          reconnectTimer = setTimeout(connect, 5000);
+        }
+      };
+    };
+
+    fetchPosts().then(connect);
+    return () => {
+      closed = true;
+      if (reconnectTimer) {
+        clearTimeout(reconnectTimer);
+      }
+      socket?.close();
+    };
   }, []);
 
   const createPost = async () => {
@@ -60,7 +135,7 @@ const ProgressSharing = () => {
     };
 
     try {
-      const response = await fetch('http://10.11.146.131:8080/posts', {
+      const response = await authFetch('http://10.11.146.131:8080/posts', {
         method: 'POST',
         headers: {
           'Content-Type': 'application/json',
@@ -89,7 +164,7 @@ const ProgressSharing = () => {
     }
 
     try {
-      const response = await fetch(`http://10.11.146.131:8080/posts/${post.id}/like`, {
+      const response = await authFetch(`http://10.11.146.131:8080/posts/${post.id}/like`, {
         method: 'POST',
         headers: {
           'Content-Type': 'application/json',
@@ -98,9 +173,11 @@ const ProgressSharing = () => {
       });
 
       if (response.ok) {
-        const updatedPost: Post = await response.json();
+        // The server answers with the post's counters, not its likes.
         setPosts((prevPosts) =>
-          prevPosts.map((p) => (p.id === post.id ? updatedPost : p))
+          prevPosts.map((p) =>
+            p.id === post.id && !p.likes.includes(userSession) ? { ...p, likes: [...p.likes, userSession] } : p
+          )
         );
       } else {
         alert('Failed to like post');
@@ -118,7 +195,7 @@ const ProgressSharing = () => {
     }
 
     try {
-      const response = await fetch(`http://10.11.146.131:8080/posts/${post.id}/comment`, {
+      const response = await authFetch(`http://10.11.146.131:8080/posts/${post.id}/comment`, {
         method: 'POST',
         headers: {
           'Content-Type': 'application/json',
@@ -127,9 +204,9 @@ const ProgressSharing = () => {
       });
 
       if (response.ok) {
-        const updatedPost: Post = await response.json();
+        const updated: Pick<Post, 'comments'> = await response.json();
         setPosts((prevPosts) =>
-          prevPosts.map((p) => (p.id === post.id ? updatedPost : p))
+          prevPosts.map((p) => (p.id === post.id ? { ...p, comments: updated.comments } : p))
         );
         setCommentText('');
         setCommentingOn(null);
@@ -4,7 +4,7 @@ import * as Notifications from 'expo-notifications';
 import Animated, { useSharedValue, useAnimatedStyle, withSpring, interpolate } from 'react-native-reanimated';
 import { LinearGradient } from 'expo-linear-gradient';
 import { Ionicons } from '@expo/vector-icons';
-import { useAuth } from '../hooks/useAuth'
+import { authFetch, useAuth } from '../hooks/useAuth'
 const { width, height } = Dimensions.get('window');
 
 Notifications.setNotificationHandler({
@@ -49,7 +49,7 @@ export default function WaterReminder() {
 
   const loadWaterLevel = async () => {
     try {
-      const response = await fetch(`http://10.11.146.131:8080/water?email=${user}`);
+      const response = await authFetch(`http://10.11.146.131:8080/water?email=${user}`);
       const data = await response.json();
       console.log(user);
       setWaterLevel(data.waterLevel || 0);
@@ -60,7 +60,7 @@ export default function WaterReminder() {
 
   const addWater = async () => {
     try {
-      const response = await fetch('http://10.11.146.131:8080/water', {
+      const response = await authFetch('http://10.11.146.131:8080/water', {
         method: 'POST',
         headers: {
           'Content-Type': 'application/json',
@@ -76,7 +76,7 @@ export default function WaterReminder() {
 
   const resetWaterLevel = async () => {
     try {
-      const response = await fetch('http://10.11.146.131:8080/water/reset', {
+      const response = await authFetch('http://10.11.146.131:8080/water/reset', {
         method: 'POST',
         headers: {
           'Content-Type': 'application/json',
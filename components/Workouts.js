@@ -19,7 +19,7 @@ import Animated, {
 } from 'react-native-reanimated';
 import { LinearGradient } from 'expo-linear-gradient';
 import { Ionicons } from '@expo/vector-icons';
-import { useAuth } from '../hooks/useAuth';
+import { authFetch, useAuth } from '../hooks/useAuth';
 
 const { width, height } = Dimensions.get('window');
 
@@ -44,6 +44,7 @@ export default function Workouts() {
   const [timer, setTimer] = useState(0);
   const [isActive, setIsActive] = useState(false);
   const [caloriesBurned, setCaloriesBurned] = useState(0);
+  const [sessionId, setSessionId] = useState(null);
   const progress = useSharedValue(0);
   const { user } = useAuth();
 
@@ -76,12 +77,13 @@ export default function Workouts() {
 
   const startWorkout = async () => {
     try {
-      const response = await fetch('http://10.11.146.131:8080/workouts/start', {
+      const response = await authFetch('http://10.11.146.131:8080/workouts/start', {
         method: 'POST',
         headers: {
           'Content-Type': 'application/json',
         },
         body: JSON.stringify({
+          email: user,
           workoutId: selectedWorkout.id,
           type: workoutType,
           reps: parseInt(reps),
@@ -89,6 +91,11 @@ export default function Workouts() {
         }),
       });
       const data = await response.json();
+      if (!response.ok) {
+        console.error('Error starting workout:', data.message);
+        return;
+      }
+      setSessionId(data.session);
       setIsActive(true);
       setTimer(0);
       progress.value = 0;
@@ -108,12 +115,13 @@ export default function Workouts() {
       }
       setCaloriesBurned(calculatedCalories);
       console.log(user);
-      await fetch('http://10.11.146.131:8080/workouts/end', {
+      await authFetch('http://10.11.146.131:8080/workouts/end', {
         method: 'POST',
         headers: {
           'Content-Type': 'application/json',
         },
         body: JSON.stringify({
+          session: sessionId,
           email: user,
           workoutId: selectedWorkout.id,
           type: workoutType,
@@ -123,6 +131,7 @@ export default function Workouts() {
           caloriesBurned: calculatedCalories,
         }),
       });
+      setSessionId(null);
       setIsActive(false);
       setSelectedWorkout(null);
       progress.value = 0;
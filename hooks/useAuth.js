@@ -4,9 +4,17 @@ import HomeScreen from '../screens/HomeScreen'; // Import your HomeScreen compon
  // Import your SignIn/SignUp component
 import AuthScreen from'../screens/AuthScreen';
 
-// Utility to generate a random token
-const generateRandomToken = () => {
-  return Math.random().toString(36).substr(2) + Date.now().toString(36);
+// Calls the server with the session token issued at sign-in; every route that reads or writes
+// a user's data requires it.
+export const authFetch = async (url, options = {}) => {
+  const authToken = await AsyncStorage.getItem('authToken');
+  return fetch(url, {
+    ...options,
+    headers: {
+      ...(options.headers || {}),
+      ...(authToken ? { Authorization: `Bearer ${authToken}` } : {}),
+    },
+  });
 };
 
 // Create AuthContext
@@ -28,7 +36,8 @@ export const AuthProvider = ({ children }) => {
     const checkSession = async () => {
       try {
         const sessionToken = await AsyncStorage.getItem('sessionToken');
-        if (sessionToken) {
+        const authToken = await AsyncStorage.getItem('authToken');
+        if (sessionToken && authToken) {
           setUserSession(sessionToken);
           setIsAuthenticated(true);
         }
@@ -80,6 +89,7 @@ export const AuthProvider = ({ children }) => {
         if (data?.success) {
           const token = data.email;
           await AsyncStorage.setItem('sessionToken', token);
+          await AsyncStorage.setItem('authToken', data.token);
           setUserSession(token);
           setIsAuthenticated(true);
         } else {
@@ -123,8 +133,9 @@ export const AuthProvider = ({ children }) => {
       const data = await response.json();
 
       if (response.ok && data?.success) {
-        const token = generateRandomToken();
+        const token = data.email;
         await AsyncStorage.setItem('sessionToken', token);
+        await AsyncStorage.setItem('authToken', data.token);
         setUserSession(token);
         setIsAuthenticated(true);
       } else {
@@ -139,6 +150,7 @@ export const AuthProvider = ({ children }) => {
   const signOut = async () => {
     try {
       await AsyncStorage.removeItem('sessionToken');
+      await AsyncStorage.removeItem('authToken');
       setUserSession(null);
       setIsAuthenticated(false);
     } catch (err) {
@@ -0,0 +1,106 @@
+#!/usr/bin/env node
+
+/**
+ * Compares two JMH result files (java -jar benchmarks.jar -rf json -rff <file>) and flags
+ * regressions: benchmarks whose score got worse by more than the threshold and by more than the
+ * two runs' combined error. Allocation per operation (gc.alloc.rate.norm, from -prof gc) is
+ * compared the same way.
+ *
+ * Usage: node compare-results.js <baseline.json> <candidate.json> [--threshold=10]
+ * Exits with 1 when anything regressed.
+ */
+
+const fs = require("fs");
+
+const ALLOCATION = "·gc.alloc.rate.norm";
+// Allocation differences below this many bytes per operation are noise (TLAB and JIT effects).
+const MIN_ALLOCATION_DELTA = 16;
+
+const args = process.argv.slice(2);
+const files = args.filter((arg) => !arg.startsWith("--"));
+const thresholdArg = args.find((arg) => arg.startsWith("--threshold="));
+const threshold = thresholdArg ? Number(thresholdArg.split("=")[1]) : 10;
+
+if (files.length !== 2 || Number.isNaN(threshold)) {
+  console.error("Usage: node compare-results.js <baseline.json> <candidate.json> [--threshold=10]");
+  process.exit(2);
+}
+
+const baseline = load(files[0]);
+const candidate = load(files[1]);
+
+let regressions = 0;
+const rows = [];
+
+for (const [key, after] of candidate) {
+  const before = baseline.get(key);
+  if (!before) {
+    rows.push([key, "new", "", format(after.primary), ""]);
+    continue;
+  }
+  const lowerIsBetter = after.mode !== "thrpt";
+  const time = compare(before.primary, after.primary, lowerIsBetter, 0);
+  rows.push([key, time.verdict, format(before.primary), format(after.primary), time.change]);
+  if (time.verdict === "REGRESSION") regressions++;
+
+  if (before.allocation && after.allocation) {
+    const allocation = compare(before.allocation, after.allocation, true, MIN_ALLOCATION_DELTA);
+    rows.push([key + " (alloc)", allocation.verdict, format(before.allocation), format(after.allocation), allocation.change]);
+    if (allocation.verdict === "REGRESSION") regressions++;
+  }
+}
+
+for (const key of baseline.keys()) {
+  if (!candidate.has(key)) {
+    rows.push([key, "missing", format(baseline.get(key).primary), "", ""]);
+  }
+}
+
+print([["benchmark", "verdict", "baseline", "candidate", "change"], ...rows]);
+console.log(`\n${regressions} regression(s) at a ${threshold}% threshold.`);
+process.exit(regressions > 0 ? 1 : 0);
+
+function load(file) {
+  const results = new Map();
+  for (const result of JSON.parse(fs.readFileSync(file, "utf8"))) {
+    const params = Object.entries(result.params || {})
+      .map(([name, value]) => `${name}=${value}`)
+      .join(",");
+    const name = result.benchmark.replace(/^com\.fitnessapp\./, "");
+    results.set(params ? `${name}[${params}]` : name, {
+      mode: result.mode,
+      primary: metric(result.primaryMetric),
+      allocation: metric((result.secondaryMetrics || {})[ALLOCATION]),
+    });
+  }
+  return results;
+}
+
+function metric(raw) {
+  if (!raw) return null;
+  const error = Number(raw.scoreError);
+  return { score: raw.score, error: Number.isFinite(error) ? error : 0, unit: raw.scoreUnit };
+}
+
+function compare(before, after, lowerIsBetter, minDelta) {
+  const delta = after.score - before.score;
+  const percent = before.score === 0 ? 0 : (delta / before.score) * 100;
+  const worse = lowerIsBetter ? delta > 0 : delta < 0;
+  const significant = Math.abs(delta) > before.error + after.error && Math.abs(delta) >= minDelta;
+  let verdict = "same";
+  if (significant && Math.abs(percent) > threshold) {
+    verdict = worse ? "REGRESSION" : "improved";
+  }
+  return { verdict, change: `${percent >= 0 ? "+" : ""}${percent.toFixed(1)}%` };
+}
+
+function format(value) {
+  return `${value.score.toFixed(3)} ± ${value.error.toFixed(3)} ${value.unit}`;
+}
+
+function print(table) {
+  const widths = table[0].map((_, column) => Math.max(...table.map((row) => row[column].length)));
+  for (const row of table) {
+    console.log(row.map((cell, column) => cell.padEnd(widths[column])).join("  ").trimEnd());
+  }
+}
@@ -0,0 +1,71 @@
+package com.fitnessapp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * POST /bmi and POST /bmi/batch, plus the calculation and recommendation lookup on their own.
+ * The batch benchmark reports per input, so it compares directly with the single one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BMIBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    private BMIController.BMIInput input;
+    private StubRequest single;
+    private StubRequest batch;
+    private final StubResponse res = new StubResponse();
+
+    @Setup
+    public void setUp() {
+        InMemoryFoodChartRepository chart = new InMemoryFoodChartRepository();
+        chart.replace(Fixtures.foodChart(24));
+        FoodChartController.connect(chart);
+        BMIController.connect(Discarding.bmi());
+
+        input = Json.read(Fixtures.bmiInput(7), BMIController.BMIInput.class);
+        single = new StubRequest("POST", "/bmi").body(Fixtures.bmiInput(7));
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            body.append(i > 0 ? "," : "").append(Fixtures.bmiInput(i));
+        }
+        batch = new StubRequest("POST", "/bmi/batch").body(body.append(']').toString());
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        return BMIController.evaluate(input, BMIController.calculateBMI(input.weight, input.height));
+    }
+
+    @Benchmark
+    public long calculate() throws Exception {
+        res.reset();
+        BMIController.calculate(single, res);
+        return res.bytesWritten();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long calculateBatch() throws Exception {
+        res.reset();
+        BMIController.calculateBatch(batch, res);
+        return res.bytesWritten();
+    }
+}
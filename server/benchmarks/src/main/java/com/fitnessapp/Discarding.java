@@ -0,0 +1,40 @@
+package com.fitnessapp;
+
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+
+/**
+ * In-memory repositories that drop what would otherwise pile up over a long benchmark run
+ * (one record per request), so the heap stays flat and GC cost reflects the handler alone.
+ */
+final class Discarding {
+
+    private Discarding() {
+    }
+
+    static BMIRepository bmi() {
+        return new InMemoryBMIRepository() {
+            @Override
+            public void insert(Document record) {
+            }
+
+            @Override
+            public Map<Integer, String> insertAll(List<Document> records) {
+                return Map.of();
+            }
+        };
+    }
+
+    /**
+     * Keeps summaries and streaks, which are bounded by users and days, but not the workouts.
+     */
+    static WorkoutRepository workouts() {
+        return new InMemoryWorkoutRepository() {
+            @Override
+            public void insert(List<Document> workouts) {
+            }
+        };
+    }
+}
@@ -0,0 +1,136 @@
+package com.fitnessapp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GET /export for one synthetic user with {@code records} documents in each of BMI,
+ * waterIntakeDays, workouts and posts. The repositories make the documents up as the cursor
+ * reaches them, so the heap holds only what the export itself keeps. The fork gets 64 MiB: an
+ * export of four million documents that buffered anything per record would not fit. After each
+ * iteration the peak of the old generation is printed, which should not grow with
+ * {@code records}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx64m")
+@State(Scope.Thread)
+public class ExportBenchmark {
+
+    private static final String EMAIL = Fixtures.email(42);
+
+    @Param({"1000", "1000000"})
+    public int records;
+
+    private final StubRequest export = new StubRequest("GET", "/export").query("email", EMAIL);
+    private final StubResponse res = new StubResponse();
+    private List<MemoryPoolMXBean> oldGeneration;
+
+    @Setup
+    public void setUp() {
+        export.attribute("email", EMAIL);
+        ExportController.connect(
+                new InMemoryBMIRepository() {
+                    @Override
+                    public Iterable<Document> records(String user, int batchSize) {
+                        return generated(n -> new Document("_id", new ObjectId(1_600_000_000 + n, n))
+                                .append("user", user)
+                                .append("weight", 50 + n % 60)
+                                .append("height", 150 + n % 45)
+                                .append("age", 30)
+                                .append("gender", "female")
+                                .append("bmi", 22.5 + n % 10)
+                                .append("category", "Normal weight")
+                                .append("timestamp", new Date(1_600_000_000_000L + n * 60_000L)));
+                    }
+                },
+                new InMemoryWaterRepository() {
+                    @Override
+                    public Iterable<Document> history(String email, int batchSize) {
+                        return generated(n -> new Document("email", email)
+                                .append("day", new Date(n * WaterIntakeBuffer.DAY_MS))
+                                .append("events", List.of(new Document("m", 480).append("a", 250),
+                                        new Document("m", 720).append("a", 500)))
+                                .append("count", 2));
+                    }
+                },
+                new InMemoryWorkoutRepository() {
+                    @Override
+                    public Iterable<Document> workouts(String email, int batchSize) {
+                        return generated(n -> new Document("_id", new ObjectId(1_600_000_000 + n, n))
+                                .append("email", email)
+                                .append("duration", 1800)
+                                .append("caloriesBurned", 320.5)
+                                .append("timestamp", 1_600_000_000_000L + n * 3_600_000L));
+                    }
+                },
+                new InMemoryPostRepository() {
+                    @Override
+                    public Iterable<Document> postsBy(String email, int batchSize) {
+                        return generated(Fixtures::post);
+                    }
+                });
+
+        oldGeneration = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .filter(pool -> pool.getName().contains("Old") || pool.getName().contains("Tenured"))
+                .collect(Collectors.toList());
+        System.gc();
+        oldGeneration.forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    @TearDown(Level.Iteration)
+    public void printPeak() {
+        for (MemoryPoolMXBean pool : oldGeneration) {
+            System.out.printf("%n%s peak: %,d KiB", pool.getName(), pool.getPeakUsage().getUsed() / 1024);
+        }
+    }
+
+    @Benchmark
+    public long export() throws Exception {
+        res.reset();
+        ExportController.export(export, res);
+        return res.bytesWritten();
+    }
+
+    private Iterable<Document> generated(IntFunction<Document> record) {
+        return () -> new Iterator<Document>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < records;
+            }
+
+            @Override
+            public Document next() {
+                return record.apply(next++);
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package com.fitnessapp;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * Deterministic sample data shaped like what the app stores.
+ */
+final class Fixtures {
+
+    private static final String[] RANGES = {"<18.5", "18.5-24.9", "25-29.9", ">=30"};
+    private static final String[] CATEGORIES = {"Underweight", "Normal weight", "Overweight", "Obesity"};
+    private static final String[] MEAL_TYPES = {"Breakfast", "Lunch", "Snack", "Dinner"};
+
+    private Fixtures() {
+    }
+
+    static List<Document> foodChart(int rows) {
+        List<Document> chart = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            chart.add(new Document("BMI Range", RANGES[i % RANGES.length])
+                    .append("BMI Category", CATEGORIES[i % CATEGORIES.length])
+                    .append("Meal Type", MEAL_TYPES[(i / RANGES.length) % MEAL_TYPES.length])
+                    .append("Foods List", "Oatmeal with banana, Greek yogurt, almonds, green tea #" + i)
+                    .append("Calories per Serving", 350 + i % 200)
+                    .append("Nutrition Information", "High fibre, moderate protein, low added sugar")
+                    .append("Protein Content (g)", 15 + i % 20)
+                    .append("Months to Follow", 1 + i % 6));
+        }
+        return chart;
+    }
+
+    /**
+     * A feed of {@code size} posts, newest first, built on access so that large feeds can be
+     * loaded into a repository without holding a second copy.
+     */
+    static List<Document> feed(int size) {
+        return new AbstractList<Document>() {
+            @Override
+            public Document get(int index) {
+                return post(size - index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    static Document post(int n) {
+        List<String> likes = new ArrayList<>();
+        for (int i = 0; i < n % 8; i++) {
+            likes.add("user" + (n + i) + "@example.com");
+        }
+        List<Document> comments = new ArrayList<>();
+        for (int i = 0; i < Math.min(3, n % 5); i++) {
+            comments.add(new Document("id", "c" + n + "-" + i)
+                    .append("text", "Great progress, keep it up!")
+                    .append("email", "friend" + i + "@example.com")
+                    .append("timestamp", 1_700_000_000_000L + n));
+        }
+        return new Document("_id", new ObjectId(1_700_000_000 + n, n))
+                .append("id", "p" + n)
+                .append("text", "Finished a 5k run today, new personal best after six weeks of training. #" + n)
+                .append("mediaUrl", "")
+                .append("email", "user" + n + "@example.com")
+                .append("likes", likes)
+                .append("likeCount", likes.size())
+                .append("comments", comments)
+                .append("commentCount", comments.size())
+                .append("commentsBucketed", true);
+    }
+
+    static String bmiInput(int n) {
+        return "{\"weight\":" + (50 + n % 60) + ",\"height\":" + (150 + n % 45) + ",\"age\":" + (18 + n % 50)
+                + ",\"gender\":\"" + (n % 2 == 0 ? "male" : "female") + "\",\"user\":\"user" + n + "@example.com\"}";
+    }
+
+    static String email(int n) {
+        return "user" + n + "@example.com";
+    }
+}
@@ -0,0 +1,73 @@
+package com.fitnessapp;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mapping chart documents to rows, and serving GET /food-chart (full and 304) and
+ * GET /food-chart/query from the cached snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FoodChartBenchmark {
+
+    @Param({"24", "240", "2400"})
+    public int rows;
+
+    private StubRequest show;
+    private StubRequest revalidate;
+    private StubRequest query;
+    private final StubResponse res = new StubResponse();
+
+    @Setup
+    public void setUp() {
+        InMemoryFoodChartRepository chart = new InMemoryFoodChartRepository();
+        chart.replace(Fixtures.foodChart(rows));
+        FoodChartController.connect(chart);
+
+        show = new StubRequest("GET", "/food-chart");
+        FoodChartController.show(show, res);
+        revalidate = new StubRequest("GET", "/food-chart").header("If-None-Match", res.header("ETag"));
+        query = new StubRequest("GET", "/food-chart/query").query("bmi", "22.5").query("mealType", "Lunch");
+    }
+
+    @Benchmark
+    public List<FoodChartController.FoodItem> mapDocuments() {
+        return FoodChartController.getFoodChart();
+    }
+
+    @Benchmark
+    public Object show() {
+        res.reset();
+        return FoodChartController.show(show, res);
+    }
+
+    @Benchmark
+    public Object showNotModified() {
+        res.reset();
+        return FoodChartController.show(revalidate, res);
+    }
+
+    @Benchmark
+    public long query() throws Exception {
+        res.reset();
+        FoodChartController.query(query, res);
+        return res.bytesWritten();
+    }
+}
@@ -0,0 +1,88 @@
+package com.fitnessapp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+
+/**
+ * Response serialization through the shared Json layer against the previous approach of a
+ * fresh reflective Gson building the body as a String. Run with {@code -prof gc} and compare
+ * gc.alloc.rate.norm for the bytes allocated per response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonBenchmark {
+
+    private BMIController.BMIResult bmiResult;
+    private WaterReminderController.WaterResult waterResult;
+    private List<Document> page;
+    private final StubResponse res = new StubResponse();
+
+    @Setup
+    public void setUp() {
+        InMemoryFoodChartRepository chart = new InMemoryFoodChartRepository();
+        chart.replace(Fixtures.foodChart(24));
+        FoodChartController.connect(chart);
+        BMIController.BMIInput input = Json.read(Fixtures.bmiInput(7), BMIController.BMIInput.class);
+        double bmi = BMIController.calculateBMI(input.weight, input.height);
+        bmiResult = BMIController.evaluate(input, bmi);
+        bmiResult.mealPlan = FoodChartController.mealPlanFor(bmi);
+        waterResult = new WaterReminderController.WaterResult(1750);
+        page = new ArrayList<>(Fixtures.feed(50));
+    }
+
+    @Benchmark
+    public byte[] bmiResultGson() {
+        return new Gson().toJson(bmiResult).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long bmiResultJson() throws Exception {
+        res.reset();
+        Json.write(res, bmiResult);
+        return res.bytesWritten();
+    }
+
+    @Benchmark
+    public byte[] waterResultGson() {
+        return new Gson().toJson(waterResult).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long waterResultJson() throws Exception {
+        res.reset();
+        Json.write(res, waterResult);
+        return res.bytesWritten();
+    }
+
+    @Benchmark
+    public byte[] postsPageGson() {
+        return new Gson().toJson(page).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long postsPageJson() throws Exception {
+        res.reset();
+        Json.write(res, page);
+        return res.bytesWritten();
+    }
+}
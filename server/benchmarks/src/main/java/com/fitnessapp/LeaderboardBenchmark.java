@@ -0,0 +1,74 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Leaderboard updates, rank lookups and top-50 reads with up to a million ranked users.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class LeaderboardBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int users;
+
+    private final Leaderboard leaderboard = new Leaderboard();
+    private final List<Document> single = new ArrayList<>(1);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<Document> batch = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            batch.add(workout(i, 100 + (i * 7919L) % 5000));
+            if (batch.size() == 10_000) {
+                leaderboard.record(batch);
+                batch.clear();
+            }
+        }
+        leaderboard.record(batch);
+        single.add(null);
+    }
+
+    @Benchmark
+    public List<Document> record() {
+        single.set(0, workout(next++ % users, 1.5));
+        leaderboard.record(single);
+        return single;
+    }
+
+    @Benchmark
+    public Leaderboard.Entry rank() {
+        return leaderboard.rank(WorkoutSummaries.WEEK, Fixtures.email(next++ % users));
+    }
+
+    @Benchmark
+    public List<Leaderboard.Entry> top50() {
+        return leaderboard.top(WorkoutSummaries.WEEK, 50);
+    }
+
+    private static Document workout(int user, double calories) {
+        return new Document("email", Fixtures.email(user))
+                .append("caloriesBurned", calories)
+                .append("timestamp", System.currentTimeMillis());
+    }
+}
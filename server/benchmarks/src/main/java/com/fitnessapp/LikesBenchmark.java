@@ -0,0 +1,95 @@
+package com.fitnessapp;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * POST /posts/:id/like from many threads on one hot post: half the likes are new, half repeat
+ * one of a few emails. After every iteration the post must hold each email once and a likeCount
+ * equal to its likes, or the run fails.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(8)
+public class LikesBenchmark {
+
+    private static final String POST_ID = "hot";
+    private static final int REPEATING_EMAILS = 16;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        final AtomicInteger threads = new AtomicInteger();
+        InMemoryPostRepository posts;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            posts = new InMemoryPostRepository();
+            posts.insert(Fixtures.post(0).append("id", POST_ID));
+            App.connect(posts);
+        }
+
+        @TearDown(Level.Iteration)
+        public void verify() {
+            Document post = posts.find(POST_ID);
+            List<String> likes = post.getList("likes", String.class);
+            int likeCount = post.getInteger("likeCount");
+            if (likeCount != likes.size() || new HashSet<>(likes).size() != likes.size()) {
+                throw new IllegalStateException("Lost or doubled likes: likeCount " + likeCount + ", "
+                        + likes.size() + " likes, " + new HashSet<>(likes).size() + " distinct");
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        final StubResponse res = new StubResponse();
+        final StubRequest[] repeats = new StubRequest[REPEATING_EMAILS];
+        String prefix;
+        long next;
+
+        @Setup
+        public void setUp(Server server) {
+            prefix = "{\"email\":\"fan" + server.threads.incrementAndGet() + "-";
+            for (int i = 0; i < REPEATING_EMAILS; i++) {
+                repeats[i] = likeRequest("{\"email\":\"" + Fixtures.email(i) + "\"}");
+            }
+        }
+    }
+
+    @Benchmark
+    public int like(Server server, Client client) throws Exception {
+        long n = client.next++;
+        StubRequest req = n % 2 == 0
+                ? likeRequest(client.prefix + n + "@example.com\"}")
+                : client.repeats[(int) (n / 2 % REPEATING_EMAILS)];
+        client.res.reset();
+        App.likePost(req, client.res);
+        return client.res.status();
+    }
+
+    private static StubRequest likeRequest(String body) {
+        return new StubRequest("POST", "/posts/" + POST_ID + "/like").param(":id", POST_ID).body(body);
+    }
+}
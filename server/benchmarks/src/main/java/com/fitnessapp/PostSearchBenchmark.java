@@ -0,0 +1,113 @@
+package com.fitnessapp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GET /posts/search lookups of the newest 50 hits over up to a million posts: a word in most
+ * posts, two of them, a rare word next to a common one, a word nobody used, an author and an
+ * author with a word. Setup prints the heap the index retains.
+ *
+ * Posts are twelve words drawn from a skewed vocabulary (a few fitness words dominate, followed
+ * by a long tail of 50,000 rare ones) by 50,000 authors.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class PostSearchBenchmark {
+
+    private static final String[] COMMON = {
+            "run", "today", "workout", "gym", "new", "personal", "best", "week", "morning", "legs",
+            "squat", "miles", "training", "cardio", "yoga", "strength", "rest", "day", "feeling", "great",
+    };
+    private static final int RARE_WORDS = 50_000;
+    private static final int AUTHORS = 50_000;
+    private static final int WORDS_PER_POST = 12;
+    private static final int LIMIT = 50;
+
+    @Param({"100000", "1000000"})
+    public int posts;
+
+    private final PostSearchIndex index = new PostSearchIndex();
+
+    @Setup
+    public void setUp() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+
+        SplittableRandom random = new SplittableRandom(42);
+        StringBuilder text = new StringBuilder();
+        for (int n = 0; n < posts; n++) {
+            text.setLength(0);
+            for (int w = 0; w < WORDS_PER_POST; w++) {
+                text.append(word(random)).append(' ');
+            }
+            index.add("p" + n, text.toString(), Fixtures.email(random.nextInt(AUTHORS)));
+        }
+
+        System.gc();
+        long retained = memory.getHeapMemoryUsage().getUsed() - before;
+        System.out.printf("%nIndex of %,d posts: %,d KiB retained, %,d KiB of postings%n",
+                index.size(), retained / 1024, index.postingBytes() / 1024);
+    }
+
+    /**
+     * Two thirds of the words are common ones, the rest come from the tail, skewed towards its
+     * start.
+     */
+    private static String word(SplittableRandom random) {
+        if (random.nextInt(3) < 2) {
+            return COMMON[(int) (COMMON.length * Math.pow(random.nextDouble(), 2))];
+        }
+        return "w" + (int) (RARE_WORDS * Math.pow(random.nextDouble(), 3));
+    }
+
+    @Benchmark
+    public List<String> commonWord() {
+        return index.search("run", null, LIMIT);
+    }
+
+    @Benchmark
+    public List<String> twoCommonWords() {
+        return index.search("yoga cardio", null, LIMIT);
+    }
+
+    @Benchmark
+    public List<String> rareAndCommonWord() {
+        return index.search("w40000 run", null, LIMIT);
+    }
+
+    @Benchmark
+    public List<String> noMatch() {
+        return index.search("marathon", null, LIMIT);
+    }
+
+    @Benchmark
+    public List<String> author() {
+        return index.search(null, Fixtures.email(1234), LIMIT);
+    }
+
+    @Benchmark
+    public List<String> authorAndWord() {
+        return index.search("legs", Fixtures.email(1234), LIMIT);
+    }
+}
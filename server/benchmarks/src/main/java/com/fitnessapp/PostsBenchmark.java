@@ -0,0 +1,56 @@
+package com.fitnessapp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GET /posts: one streamed page at several page and feed sizes. Cost and allocation per page
+ * should not grow with the feed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Thread)
+public class PostsBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int feedSize;
+
+    @Param({"10", "50", "200"})
+    public int pageSize;
+
+    private StubRequest page;
+    private final StubResponse res = new StubResponse();
+
+    @Setup
+    public void setUp() {
+        InMemoryPostRepository posts = new InMemoryPostRepository();
+        for (Document post : Fixtures.feed(feedSize)) {
+            posts.insert(post);
+        }
+        App.connect(posts);
+        page = new StubRequest("GET", "/posts").query("limit", String.valueOf(pageSize));
+    }
+
+    @Benchmark
+    public long getPosts() throws Exception {
+        res.reset();
+        App.getPosts(page, res);
+        return res.bytesWritten();
+    }
+}
@@ -0,0 +1,98 @@
+package com.fitnessapp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import spark.Request;
+
+/**
+ * Request for calling a route handler directly, outside of Spark. Route parameters may be given
+ * with or without the leading colon.
+ */
+class StubRequest extends Request {
+
+    private final String method;
+    private final String path;
+    private String body;
+    private final Map<String, String> queryParams = new HashMap<>();
+    private final Map<String, String> params = new HashMap<>();
+    private final Map<String, String> headers = new HashMap<>();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private String ip = "127.0.0.1";
+
+    StubRequest(String method, String path) {
+        this.method = method;
+        this.path = path;
+    }
+
+    StubRequest body(String body) {
+        this.body = body;
+        return this;
+    }
+
+    StubRequest query(String name, String value) {
+        queryParams.put(name, value);
+        return this;
+    }
+
+    StubRequest param(String name, String value) {
+        params.put(name.startsWith(":") ? name.substring(1) : name, value);
+        return this;
+    }
+
+    StubRequest header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    StubRequest remoteAddress(String ip) {
+        this.ip = ip;
+        return this;
+    }
+
+    @Override
+    public String body() {
+        return body;
+    }
+
+    @Override
+    public String queryParams(String name) {
+        return queryParams.get(name);
+    }
+
+    @Override
+    public String params(String name) {
+        return params.get(name.startsWith(":") ? name.substring(1) : name);
+    }
+
+    @Override
+    public String headers(String name) {
+        return headers.get(name);
+    }
+
+    @Override
+    public String requestMethod() {
+        return method;
+    }
+
+    @Override
+    public String pathInfo() {
+        return path;
+    }
+
+    @Override
+    public String ip() {
+        return ip;
+    }
+
+    @Override
+    public void attribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T attribute(String name) {
+        return (T) attributes.get(name);
+    }
+}
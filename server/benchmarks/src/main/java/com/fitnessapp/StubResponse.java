@@ -0,0 +1,111 @@
+package com.fitnessapp;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import spark.Response;
+
+/**
+ * Response for calling a route handler directly. Bytes streamed to the servlet output stream
+ * are counted and discarded; call {@link #reset()} to reuse it for the next call.
+ */
+class StubResponse extends Response {
+
+    private int status = 200;
+    private String type;
+    private String body;
+    private final Map<String, String> headers = new HashMap<>();
+    private final CountingStream stream = new CountingStream();
+    private final HttpServletResponse raw = (HttpServletResponse) Proxy.newProxyInstance(
+            StubResponse.class.getClassLoader(), new Class<?>[]{HttpServletResponse.class}, (self, method, args) -> {
+                if (method.getName().equals("getOutputStream")) {
+                    return stream;
+                }
+                throw new UnsupportedOperationException("HttpServletResponse." + method.getName());
+            });
+
+    void reset() {
+        status = 200;
+        type = null;
+        body = null;
+        headers.clear();
+        stream.count = 0;
+    }
+
+    long bytesWritten() {
+        return stream.count;
+    }
+
+    String header(String name) {
+        return headers.get(name);
+    }
+
+    @Override
+    public void status(int statusCode) {
+        status = statusCode;
+    }
+
+    @Override
+    public int status() {
+        return status;
+    }
+
+    @Override
+    public void type(String contentType) {
+        type = contentType;
+    }
+
+    @Override
+    public String type() {
+        return type;
+    }
+
+    @Override
+    public void header(String name, String value) {
+        headers.put(name, value);
+    }
+
+    @Override
+    public void body(String body) {
+        this.body = body;
+    }
+
+    @Override
+    public String body() {
+        return body;
+    }
+
+    @Override
+    public HttpServletResponse raw() {
+        return raw;
+    }
+
+    private static class CountingStream extends ServletOutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.fitnessapp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * POST /water and GET /water: request parsing plus the write-behind buffer, across 1000 users.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WaterBenchmark {
+
+    private static final int USERS = 1000;
+
+    private final StubRequest[] adds = new StubRequest[USERS];
+    private final StubRequest[] reads = new StubRequest[USERS];
+    private final StubResponse res = new StubResponse();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        WaterReminderController.connect(new InMemoryWaterRepository());
+        for (int i = 0; i < USERS; i++) {
+            adds[i] = new StubRequest("POST", "/water").body("{\"email\":\"" + Fixtures.email(i) + "\",\"amount\":250}");
+            reads[i] = new StubRequest("GET", "/water").query("email", Fixtures.email(i));
+        }
+    }
+
+    @Benchmark
+    public long addWater() throws Exception {
+        res.reset();
+        WaterReminderController.addWater(adds[next++ % USERS], res);
+        return res.bytesWritten();
+    }
+
+    @Benchmark
+    public long getWater() throws Exception {
+        res.reset();
+        WaterReminderController.getWater(reads[next++ % USERS], res);
+        return res.bytesWritten();
+    }
+}
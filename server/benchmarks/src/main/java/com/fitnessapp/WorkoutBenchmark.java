@@ -0,0 +1,66 @@
+package com.fitnessapp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * POST /workouts/end from four threads: parsing, queueing and, behind it, the writer thread
+ * folding batches into summaries and the leaderboard. Once the writer falls behind the handler
+ * answers 429, so a drop in throughput shows up as a drop in ops/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class WorkoutBenchmark {
+
+    private static final int USERS = 1000;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Setup
+        public void setUp() throws IOException {
+            System.setProperty("workouts.spillFile", Files.createTempFile("workouts-spill", ".ndjson").toString());
+            WorkoutController.connect(Discarding.workouts());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        final StubRequest[] ends = new StubRequest[USERS];
+        final StubResponse res = new StubResponse();
+        int next;
+
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < USERS; i++) {
+                ends[i] = new StubRequest("POST", "/workouts/end")
+                        .body("{\"email\":\"" + Fixtures.email(i) + "\",\"duration\":1800,\"caloriesBurned\":320.5}");
+            }
+        }
+    }
+
+    @Benchmark
+    public int endWorkout(Server server, Client client) throws Exception {
+        client.res.reset();
+        WorkoutController.endWorkout(client.ends[client.next++ % USERS], client.res);
+        return client.res.status();
+    }
+}
@@ -0,0 +1,94 @@
+package com.fitnessapp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The workout session registry with 100,000 workouts in progress, from four threads: a batch of
+ * ten reps, a heartbeat, a whole session from start to end, and a sweep finding nothing to
+ * expire. Setup prints the heap the open sessions take.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Threads(4)
+@State(Scope.Benchmark)
+public class WorkoutSessionsBenchmark {
+
+    private static final int SESSIONS = 100_000;
+
+    private final WorkoutSessions sessions = new WorkoutSessions(2 * SESSIONS, 10 * 60_000L);
+    private final String[] ids = new String[SESSIONS];
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        final long[][] batch = new long[10][];
+        final long[][] heartbeat = new long[0][];
+        int next;
+
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = new long[]{1_000L * i, 1};
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        sessions.open(workout -> true);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+        for (int i = 0; i < SESSIONS; i++) {
+            ids[i] = sessions.start(Fixtures.email(i)).id.toHexString();
+        }
+        System.gc();
+        long retained = memory.getHeapMemoryUsage().getUsed() - before;
+        System.out.printf("%n%,d open sessions: %,d KiB retained, %,d bytes each%n",
+                sessions.size(), retained / 1024, retained / SESSIONS);
+    }
+
+    @Benchmark
+    public int progress(Client client) {
+        WorkoutSessions.Session session = sessions.touch(ids[client.next++ % SESSIONS]);
+        return session.record(-1, client.batch);
+    }
+
+    @Benchmark
+    public int heartbeat(Client client) {
+        WorkoutSessions.Session session = sessions.touch(ids[client.next++ % SESSIONS]);
+        return session.record(-1, client.heartbeat);
+    }
+
+    @Benchmark
+    public Document startToEnd(Client client) {
+        WorkoutSessions.Session session = sessions.start("new@example.com");
+        session.record(-1, client.batch);
+        return sessions.end(session, 0, 50);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int sweep() {
+        sessions.sweep(System.currentTimeMillis());
+        return sessions.size();
+    }
+}
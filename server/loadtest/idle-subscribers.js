@@ -0,0 +1,179 @@
+#!/usr/bin/env node
+
+/**
+ * Load test for the feed WebSocket (/posts/live): measures the server's CPU use with no
+ * subscribers, then again with N idle subscribers connected, from process_cpu_seconds_total on
+ * GET /metrics. Finally it creates one post and times how long the change takes to reach every
+ * subscriber.
+ *
+ *   java -Dstorage=memory -jar server.jar
+ *   node idle-subscribers.js --subscribers=10000 --duration=30
+ *
+ * Options: --url (default http://localhost:8080), --subscribers=10000, --duration=30 (seconds per
+ * measurement), --settle=5. Raise the open file limit (ulimit -n) on both sides first.
+ */
+
+const crypto = require("crypto");
+const http = require("http");
+
+const options = Object.fromEntries(
+  process.argv.slice(2).map((arg) => {
+    const [name, ...value] = arg.replace(/^--/, "").split("=");
+    return [name, value.join("=")];
+  })
+);
+
+const base = new URL(options.url || "http://localhost:8080");
+const subscribers = Number(options.subscribers || 10000);
+const duration = Number(options.duration || 30) * 1000;
+const settle = Number(options.settle || 5) * 1000;
+// Handshakes in flight at once, so the server's accept queue does not overflow.
+const CONNECT_PARALLELISM = 200;
+
+run().catch((error) => {
+  console.error(error);
+  process.exit(1);
+});
+
+async function run() {
+  const idle = await measure(duration);
+  console.log(`no subscribers:   ${describe(idle)}`);
+
+  const started = Date.now();
+  const sockets = await connectAll(subscribers);
+  console.log(`connected ${sockets.length} subscribers in ${Date.now() - started} ms`);
+  await sleep(settle);
+
+  const loaded = await measure(duration);
+  console.log(`${sockets.length} subscribers: ${describe(loaded)}`);
+
+  const fanOut = await broadcast(sockets);
+  console.log(`one post reached ${fanOut.reached}/${sockets.length} subscribers, p50 ${fanOut.p50} ms, max ${fanOut.max} ms`);
+
+  const closed = sockets.filter((socket) => socket.closed).length;
+  console.log(`${closed} subscribers were disconnected during the test`);
+  for (const socket of sockets) {
+    socket.destroy();
+  }
+}
+
+/**
+ * Server CPU (as a share of one core), live threads and heap over {@code ms}.
+ */
+async function measure(ms) {
+  const before = await metrics();
+  const startedAt = Date.now();
+  await sleep(ms);
+  const after = await metrics();
+  const seconds = (Date.now() - startedAt) / 1000;
+  return {
+    cpu: (after.process_cpu_seconds_total - before.process_cpu_seconds_total) / seconds,
+    threads: after.jvm_threads,
+    heap: after['jvm_memory_heap_bytes{area="used"}'],
+    subscribers: after.fitsync_feed_subscribers,
+  };
+}
+
+function describe(m) {
+  return `CPU ${(m.cpu * 100).toFixed(2)}% of a core, ${m.threads} threads, ` +
+    `${(m.heap / 1048576).toFixed(0)} MiB heap used, ${m.subscribers} subscribed`;
+}
+
+function metrics() {
+  return new Promise((resolve, reject) => {
+    http.get(new URL("/metrics", base), (response) => {
+      let text = "";
+      response.setEncoding("utf8");
+      response.on("data", (chunk) => (text += chunk));
+      response.on("end", () => {
+        const values = {};
+        for (const line of text.split("\n")) {
+          if (line && !line.startsWith("#")) {
+            const space = line.lastIndexOf(" ");
+            values[line.slice(0, space)] = Number(line.slice(space + 1));
+          }
+        }
+        resolve(values);
+      });
+    }).on("error", reject);
+  });
+}
+
+async function connectAll(count) {
+  const sockets = [];
+  let next = 0;
+  async function worker() {
+    while (next < count) {
+      next++;
+      try {
+        sockets.push(await connect());
+      } catch (error) {
+        console.error(`subscriber ${next} failed: ${error.message}`);
+      }
+    }
+  }
+  await Promise.all(Array.from({ length: Math.min(CONNECT_PARALLELISM, count) }, worker));
+  return sockets;
+}
+
+/**
+ * Opens one WebSocket and resolves with the raw socket once the upgrade succeeded. Frames are
+ * not decoded; arrival times are enough here.
+ */
+function connect() {
+  return new Promise((resolve, reject) => {
+    const request = http.request(new URL("/posts/live", base), {
+      agent: false,
+      headers: {
+        Connection: "Upgrade",
+        Upgrade: "websocket",
+        "Sec-WebSocket-Version": "13",
+        "Sec-WebSocket-Key": crypto.randomBytes(16).toString("base64"),
+      },
+    });
+    request.on("upgrade", (response, socket) => {
+      socket.lastFrameAt = 0;
+      socket.on("data", () => (socket.lastFrameAt = Date.now()));
+      socket.on("close", () => (socket.closed = true));
+      socket.on("error", () => {});
+      resolve(socket);
+    });
+    request.on("response", (response) => reject(new Error(`HTTP ${response.statusCode}`)));
+    request.on("error", reject);
+    request.end();
+  });
+}
+
+async function broadcast(sockets) {
+  const sentAt = Date.now();
+  await new Promise((resolve, reject) => {
+    const body = JSON.stringify({
+      id: "loadtest-" + crypto.randomBytes(4).toString("hex"),
+      text: "idle-subscribers load test",
+      email: "loadtest@example.com",
+    });
+    const request = http.request(new URL("/posts", base), {
+      method: "POST",
+      headers: { "Content-Type": "application/json", "Content-Length": Buffer.byteLength(body) },
+    }, (response) => {
+      response.resume();
+      response.on("end", resolve);
+    });
+    request.on("error", reject);
+    request.end(body);
+  });
+  await sleep(settle);
+  const latencies = sockets
+    .filter((socket) => socket.lastFrameAt >= sentAt)
+    .map((socket) => socket.lastFrameAt - sentAt)
+    .sort((a, b) => a - b);
+  return {
+    reached: latencies.length,
+    p50: latencies.length ? latencies[Math.floor(latencies.length / 2)] : 0,
+    max: latencies.length ? latencies[latencies.length - 1] : 0,
+  };
+}
+
+function sleep(ms) {
+  return new Promise((resolve) => setTimeout(resolve, ms));
+}
@@ -0,0 +1,136 @@
+#!/usr/bin/env node
+
+/**
+ * Load test for the request thread modes (-Dserver.threads=pool|virtual): holds N requests in
+ * flight against one URL for a fixed time at each concurrency level and reports throughput and
+ * latency percentiles. Slow storage is simulated by running the server in memory with a delay on
+ * every repository call:
+ *
+ *   java -Dstorage=memory -Dstorage.simulatedLatencyMs=50 -Dserver.threads=pool -jar server.jar
+ *   node slow-requests.js --label=pool --out=pool.json
+ *   (restart with -Dserver.threads=virtual)
+ *   node slow-requests.js --label=virtual --out=virtual.json
+ *   node slow-requests.js --report=pool.json,virtual.json
+ *
+ * Options: --url (default http://localhost:8080/posts?limit=10), --concurrency=1000,2500,5000,10000,
+ * --duration=20 and --warmup=5 (seconds per level). Raise the open file limit (ulimit -n) on both
+ * sides for 10k connections.
+ */
+
+const fs = require("fs");
+const http = require("http");
+
+const options = Object.fromEntries(
+  process.argv.slice(2).map((arg) => {
+    const [name, ...value] = arg.replace(/^--/, "").split("=");
+    return [name, value.join("=")];
+  })
+);
+
+if (options.report) {
+  report(options.report.split(","));
+} else {
+  run().catch((error) => {
+    console.error(error);
+    process.exit(1);
+  });
+}
+
+async function run() {
+  const url = new URL(options.url || "http://localhost:8080/posts?limit=10");
+  const levels = (options.concurrency || "1000,2500,5000,10000").split(",").map(Number);
+  const duration = Number(options.duration || 20) * 1000;
+  const warmup = Number(options.warmup || 5) * 1000;
+  const label = options.label || "run";
+
+  const results = [];
+  for (const concurrency of levels) {
+    const agent = new http.Agent({ keepAlive: true, maxSockets: concurrency });
+    await load(url, agent, concurrency, warmup);
+    const result = await load(url, agent, concurrency, duration);
+    agent.destroy();
+    results.push({ label, concurrency, ...result });
+    print([header(), row(results[results.length - 1])], results.length > 1);
+  }
+  if (options.out) {
+    fs.writeFileSync(options.out, JSON.stringify(results, null, 2));
+  }
+}
+
+/**
+ * Keeps {@code concurrency} requests in flight for {@code duration} ms.
+ */
+function load(url, agent, concurrency, duration) {
+  const latencies = [];
+  let errors = 0;
+  const started = Date.now();
+  const deadline = started + duration;
+
+  return new Promise((resolve) => {
+    let active = concurrency;
+    for (let i = 0; i < concurrency; i++) {
+      next();
+    }
+
+    function next() {
+      if (Date.now() >= deadline) {
+        if (--active === 0) {
+          const seconds = (Date.now() - started) / 1000;
+          latencies.sort((a, b) => a - b);
+          resolve({
+            requests: latencies.length,
+            errors,
+            rps: latencies.length / seconds,
+            p50: percentile(latencies, 0.5),
+            p99: percentile(latencies, 0.99),
+            max: latencies.length ? latencies[latencies.length - 1] : 0,
+          });
+        }
+        return;
+      }
+      const sent = process.hrtime.bigint();
+      const request = http.get(url, { agent }, (response) => {
+        response.resume();
+        response.on("end", () => {
+          if (response.statusCode === 200) {
+            latencies.push(Number(process.hrtime.bigint() - sent) / 1e6);
+          } else {
+            errors++;
+          }
+          next();
+        });
+      });
+      request.on("error", () => {
+        errors++;
+        setTimeout(next, 10);
+      });
+    }
+  });
+}
+
+function percentile(sorted, p) {
+  if (sorted.length === 0) return 0;
+  return sorted[Math.min(sorted.length - 1, Math.floor(sorted.length * p))];
+}
+
+function report(files) {
+  const results = files.flatMap((file) => JSON.parse(fs.readFileSync(file, "utf8")));
+  results.sort((a, b) => a.concurrency - b.concurrency || a.label.localeCompare(b.label));
+  print([header(), ...results.map(row)]);
+}
+
+function header() {
+  return ["mode", "concurrency", "requests", "req/s", "p50 ms", "p99 ms", "max ms", "errors"];
+}
+
+function row(r) {
+  return [r.label, String(r.concurrency), String(r.requests), r.rps.toFixed(0), r.p50.toFixed(1),
+    r.p99.toFixed(1), r.max.toFixed(1), String(r.errors)];
+}
+
+function print(table, skipHeader) {
+  const widths = header().map((name) => Math.max(name.length, 11));
+  for (const cells of skipHeader ? table.slice(1) : table) {
+    console.log(cells.map((cell, column) => cell.padEnd(widths[column])).join("  ").trimEnd());
+  }
+}
@@ -1,18 +1,16 @@
 package com.fitnessapp;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 
 import org.bson.Document;
-
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.Updates;
+import org.bson.types.ObjectId;
 
 import spark.Request;
 import spark.Response;
@@ -21,55 +19,207 @@ import static spark.Spark.exception;
 import static spark.Spark.get;
 import static spark.Spark.port;
 import static spark.Spark.post;
+import static spark.Spark.webSocket;
+import static spark.Spark.webSocketIdleTimeoutMillis;
 
 public class App {
 
-    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-    private static MongoCollection<Document> posts;
-    private static MongoClient mongoClient;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final FeedChangeLog changes = new FeedChangeLog(Integer.getInteger("posts.changeLogSize", 1024));
+    private static final FeedBroadcaster live = new FeedBroadcaster(changes,
+            Integer.getInteger("posts.liveQueueSize", 64),
+            Integer.getInteger("posts.liveMaxSubscribers", 20_000));
+    private static final PostSearchIndex search = new PostSearchIndex();
+    private static PostRepository posts;
 
     public static void main(String[] args) {
         port(8080);
     }
 
-    public static void init(MongoDatabase database) {
-
-        posts = database.getCollection("posts");
-
-        if (!database.listCollectionNames().into(new ArrayList<>()).contains("posts")) {
-            database.createCollection("posts");
-            System.out.println("Collection 'posts' created.");
-        }
+    /**
+     * Serves feed changes as they happen on the /posts/live WebSocket (see {@link FeedBroadcaster}).
+     * Spark only takes WebSockets before the first route, so this runs ahead of every init().
+     */
+    public static void initLive() {
+        webSocketIdleTimeoutMillis(Integer.getInteger("posts.liveIdleTimeoutMs", 30 * 60_000));
+        webSocket("/posts/live", live);
+        live.start();
+        Metrics.gauge("fitsync_feed_subscribers", "Clients connected to the feed WebSocket.", live::subscribers);
+        Metrics.counter("fitsync_feed_resyncs_total", "Feed subscribers sent a resync because they fell behind.", live::resyncs);
+    }
 
+    public static void init(Callable<PostRepository> repository) {
         get("/posts", App::getPosts);
+        get("/posts/changes", App::getChanges);
+        get("/posts/search", App::searchPosts);
         post("/posts", App::createPost);
         post("/posts/:id/like", App::likePost);
         post("/posts/:id/comment", App::commentOnPost);
+        get("/posts/:id/comments", App::getComments);
 
-        after((req, res) -> res.type("application/json"));
+        after((req, res) -> {
+            if (res.type() == null) {
+                res.type("application/json");
+            }
+        });
 
         exception(Exception.class, (e, req, res) -> {
             res.status(500);
-            res.body(gson.toJson(new ErrorResponse("Internal server error: " + e.getMessage())));
+            res.body(Json.toJson(new ErrorResponse("Internal server error: " + e.getMessage())));
         });
+
+        Metrics.gauge("fitsync_post_search_posts", "Posts in the search index.", search::size);
+        Metrics.gauge("fitsync_post_search_posting_bytes", "Approximate heap taken by the search index postings.", search::postingBytes);
+
+        Startup.start("posts", () -> {
+            connect(repository.call());
+            // Searches wait for the index; the rest of the feed does not.
+            Startup.start("postSearch", App::indexPosts, "/posts/search");
+        }, "/posts");
+    }
+
+    /**
+     * Sets up storage without registering any routes.
+     */
+    static void connect(PostRepository repository) {
+        posts = repository;
     }
 
-    private static String getPosts(Request req, Response res) {
-        List<Document> postList = posts.find().into(new ArrayList<>());
-        return gson.toJson(postList);
+    /**
+     * Rebuilds the search index from storage.
+     */
+    static void indexPosts() {
+        search.rebuild(posts.scan());
     }
 
-    private static String createPost(Request req, Response res) {
-        Document requestBody = gson.fromJson(req.body(), Document.class);
+    /**
+     * Streams one page of posts, newest first. Pages are keyed on the post's {@code _id}: pass the
+     * {@code _id} of the last post received as {@code after} to get the next page. A page shorter
+     * than {@code limit} is the last one.
+     */
+    static String getPosts(Request req, Response res) throws IOException {
+        int limit = DEFAULT_PAGE_SIZE;
+        ObjectId before = null;
+        try {
+            if (req.queryParams("limit") != null) {
+                limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(req.queryParams("limit"))));
+            }
+        } catch (NumberFormatException e) {
+            res.status(400);
+            return Json.toJson(new ErrorResponse("limit must be a number."));
+        }
+        String after = req.queryParams("after");
+        if (after != null) {
+            if (!ObjectId.isValid(after)) {
+                res.status(400);
+                return Json.toJson(new ErrorResponse("after must be a post _id."));
+            }
+            before = new ObjectId(after);
+        }
+
+        // Read before querying so a change racing with this page is replayed rather than missed.
+        res.header("X-Feed-Epoch", changes.epoch());
+        res.header("X-Feed-Version", String.valueOf(changes.version()));
+
+        Iterator<Document> page = posts.page(before, limit).iterator();
+
+        res.status(200);
+        try {
+            return Json.stream(res, writer -> {
+                writer.beginArray();
+                while (page.hasNext()) {
+                    Json.writeDocument(writer, page.next());
+                }
+                writer.endArray();
+            });
+        } finally {
+            if (page instanceof Closeable) {
+                ((Closeable) page).close();
+            }
+        }
+    }
+
+    /**
+     * Returns the feed changes after {@code since}, as advertised by the X-Feed-Version header of
+     * GET /posts or a previous call. When the caller is too far behind, or the server restarted
+     * (the {@code epoch} no longer matches), the response carries {@code "resync": true} and the
+     * feed has to be reloaded.
+     */
+    static String getChanges(Request req, Response res) throws IOException {
+        long since;
+        try {
+            since = Long.parseLong(Optional.ofNullable(req.queryParams("since")).orElse("0"));
+        } catch (NumberFormatException e) {
+            res.status(400);
+            return Json.toJson(new ErrorResponse("since must be a feed version."));
+        }
+        String epoch = req.queryParams("epoch");
+
+        List<Document> delta = epoch == null || epoch.equals(changes.epoch()) ? changes.since(since) : null;
+        long version = delta == null ? changes.version() : since + delta.size();
+
+        Document body = new Document("epoch", changes.epoch())
+                .append("version", version)
+                .append("resync", delta == null);
+        if (delta != null) {
+            body.append("changes", delta);
+        }
+
+        res.status(200);
+        return Json.write(res, body);
+    }
+
+    /**
+     * Returns up to {@code limit} posts containing every word of {@code q}, written by
+     * {@code author} (an email), newest first. At least one of the two is required.
+     */
+    static String searchPosts(Request req, Response res) throws IOException {
+        String query = req.queryParams("q");
+        String author = req.queryParams("author");
+        if (query != null && query.trim().isEmpty()) {
+            query = null;
+        }
+        if (author != null && author.trim().isEmpty()) {
+            author = null;
+        }
+        if (query == null && author == null) {
+            res.status(400);
+            return Json.toJson(new ErrorResponse("q or author is required."));
+        }
+        int limit = DEFAULT_PAGE_SIZE;
+        try {
+            if (req.queryParams("limit") != null) {
+                limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(req.queryParams("limit"))));
+            }
+        } catch (NumberFormatException e) {
+            res.status(400);
+            return Json.toJson(new ErrorResponse("limit must be a number."));
+        }
+
+        List<Document> found = posts.findAll(search.search(query, author, limit));
+
+        res.status(200);
+        return Json.stream(res, writer -> {
+            writer.beginArray();
+            for (Document post : found) {
+                Json.writeDocument(writer, post);
+            }
+            writer.endArray();
+        });
+    }
+
+    static String createPost(Request req, Response res) throws IOException {
+        Document requestBody = Json.read(req.body(), Document.class);
 
         String id = requestBody.getString("id");
         String text = requestBody.getString("text");
         String mediaUrl = Optional.ofNullable(requestBody.getString("mediaUrl")).orElse("");
-        String email = requestBody.getString("email");
+        String email = AuthController.actingAs(req, requestBody.getString("email"));
 
         if (id == null || id.trim().isEmpty() || text == null || text.trim().isEmpty() || email == null || email.trim().isEmpty()) {
             res.status(400);
-            return gson.toJson(new ErrorResponse("ID, text, and email are required for creating a post."));
+            return Json.toJson(new ErrorResponse("ID, text, and email are required for creating a post."));
         }
 
         Document post = new Document("id", id)
@@ -77,69 +227,115 @@ public class App {
                 .append("mediaUrl", mediaUrl)
                 .append("email", email)
                 .append("likes", new ArrayList<String>())
-                .append("comments", new ArrayList<Document>());
+                .append("likeCount", 0)
+                .append("comments", new ArrayList<Document>())
+                .append("commentCount", 0)
+                .append("commentsBucketed", true);
 
-        posts.insertOne(post);
+        posts.insert(post);
+        search.add(id, text, email);
+        changes.append("post", id, "post", new Document(post));
+        live.changed();
 
         res.status(201);
-        return gson.toJson(post);
+        return Json.write(res, post);
     }
 
-    private static String likePost(Request req, Response res) {
+    static String likePost(Request req, Response res) throws IOException {
         String id = req.params(":id");
-        Document requestBody = gson.fromJson(req.body(), Document.class);
-        String email = requestBody.getString("email");
+        Document requestBody = Json.read(req.body(), Document.class);
+        String email = AuthController.actingAs(req, requestBody.getString("email"));
 
         if (email == null || email.trim().isEmpty()) {
             res.status(400);
-            return gson.toJson(new ErrorResponse("Email is required for liking a post."));
+            return Json.toJson(new ErrorResponse("Email is required for liking a post."));
         }
 
-        Document post = posts.find(Filters.eq("id", id)).first();
+        Document post = posts.addLike(id, email);
 
         if (post != null) {
-            List<String> likes = post.getList("likes", String.class);
-            if (!likes.contains(email)) {
-                likes.add(email);
-                posts.updateOne(Filters.eq("id", id), Updates.set("likes", likes));
-                post.put("likes", likes);
-            }
-            return gson.toJson(post);
+            changes.append("like", id, "email", email);
+            live.changed();
+            return Json.write(res, counters(post));
+        }
+
+        post = posts.find(id);
+        if (post != null) {
+            return Json.write(res, counters(post));
         } else {
             res.status(404);
-            return gson.toJson(new ErrorResponse("Post not found."));
+            return Json.toJson(new ErrorResponse("Post not found."));
         }
     }
 
-    private static String commentOnPost(Request req, Response res) {
+    static String commentOnPost(Request req, Response res) throws IOException {
         String id = req.params(":id");
-        Document requestBody = gson.fromJson(req.body(), Document.class);
+        Document requestBody = Json.read(req.body(), Document.class);
         String commentText = requestBody.getString("text");
-        String email = requestBody.getString("email");
+        String email = AuthController.actingAs(req, requestBody.getString("email"));
 
         if (commentText == null || commentText.trim().isEmpty() || email == null || email.trim().isEmpty()) {
             res.status(400);
-            return gson.toJson(new ErrorResponse("Comment text and email are required."));
+            return Json.toJson(new ErrorResponse("Comment text and email are required."));
         }
 
-        Document post = posts.find(Filters.eq("id", id)).first();
+        Document comment = new Document("id", java.util.UUID.randomUUID().toString())
+                .append("text", commentText)
+                .append("email", email)
+                .append("timestamp", System.currentTimeMillis());
+
+        Document post = posts.addComment(id, comment);
 
         if (post != null) {
-            List<Document> comments = post.getList("comments", Document.class);
-            Document comment = new Document("id", java.util.UUID.randomUUID().toString())
-                    .append("text", commentText)
-                    .append("email", email)
-                    .append("timestamp", System.currentTimeMillis());
-            comments.add(comment);
-            posts.updateOne(Filters.eq("id", id), Updates.set("comments", comments));
-            post.put("comments", comments);
-            return gson.toJson(post);
+            changes.append("comment", id, "comment", comment);
+            live.changed();
+            return Json.write(res, counters(post).append("comments", post.get("comments")));
         } else {
             res.status(404);
-            return gson.toJson(new ErrorResponse("Post not found."));
+            return Json.toJson(new ErrorResponse("Post not found."));
         }
     }
 
+    /**
+     * Returns one bucket of a post's comments, newest first. Pass the returned
+     * {@code nextCursor} back as {@code cursor} for the next (older) page; it is null on the last one.
+     */
+    static String getComments(Request req, Response res) throws IOException {
+        String id = req.params(":id");
+        Long cursor = null;
+        if (req.queryParams("cursor") != null) {
+            try {
+                cursor = Long.parseLong(req.queryParams("cursor"));
+            } catch (NumberFormatException e) {
+                res.status(400);
+                return Json.toJson(new ErrorResponse("cursor must be a number."));
+            }
+        }
+
+        PostRepository.CommentBucket bucket = posts.comments(id, cursor);
+
+        List<Document> page = new ArrayList<>();
+        Object nextCursor = null;
+        if (bucket != null) {
+            page.addAll(bucket.comments);
+            Collections.reverse(page);
+            nextCursor = bucket.bucket > 0 ? bucket.bucket : null;
+        }
+
+        res.status(200);
+        return Json.write(res, new Document("comments", page).append("nextCursor", nextCursor));
+    }
+
+    /**
+     * What a like or comment answers with: the post's id and counters, but not its likes, which
+     * grow with every like.
+     */
+    private static Document counters(Document post) {
+        return new Document("id", post.get("id"))
+                .append("likeCount", post.get("likeCount"))
+                .append("commentCount", post.get("commentCount"));
+    }
+
     private static class ErrorResponse {
 
         private final String error;
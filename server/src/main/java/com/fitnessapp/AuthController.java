@@ -1,50 +1,126 @@
 package com.fitnessapp;
 
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseAuthException;
-import com.google.firebase.auth.UserRecord;
-import com.google.gson.Gson;
+import java.util.Set;
 
 import spark.Request;
 import spark.Response;
+import static spark.Spark.before;
+import static spark.Spark.halt;
 import static spark.Spark.post;
 
 public class AuthController {
 
-    private static final Gson gson = new Gson();
+    // Routes anyone may call; everything else is protected by authenticate().
+    private static final Set<String> PUBLIC_PATHS = Set.of("/signup", "/signin", "/signout", "/metrics", "/live", "/ready");
+    private static final Set<String> PUBLIC_READ_PREFIXES = Set.of("/food-chart", "/posts", "/leaderboard");
+
+    private static IdentityProvider identities;
+    private static SessionTokens sessions;
+    // Protected routes need a token unless auth.required=false, which lets clients that do not
+    // send one yet through; forged or expired tokens are always rejected.
+    private static boolean required;
+
+    public static void init(IdentityProvider identityProvider) {
+        identities = identityProvider;
+        sessions = SessionTokens.fromConfig("auth.sessionSecret", Long.getLong("auth.sessionTtlSeconds", 3600L));
+        required = Boolean.parseBoolean(System.getProperty("auth.required", "true"));
+
+        before(AuthController::authenticate);
 
-    public static void init() {
         post("/signup", AuthController::signUp);
         post("/signin", AuthController::signIn);
         post("/signout", AuthController::signOut);
     }
 
+    /**
+     * Verifies the bearer session token on protected routes and exposes the caller as the
+     * "uid" and "email" request attributes.
+     */
+    private static void authenticate(Request req, Response res) {
+        if (isPublic(req)) {
+            return;
+        }
+        String header = req.headers("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            if (required) {
+                halt(401, Json.toJson(new ErrorResponse("Sign in required")));
+            }
+            return;
+        }
+        IdentityProvider.Identity identity = sessions.verify(header.substring("Bearer ".length()));
+        if (identity == null) {
+            halt(401, Json.toJson(new ErrorResponse("Session expired or invalid")));
+        }
+        req.attribute("uid", identity.uid);
+        req.attribute("email", identity.email);
+    }
+
+    /**
+     * Returns the user whose data {@code req} reads or writes: the signed-in caller, or
+     * {@code claimed} when the request carries no token (public routes, or auth.required off).
+     * Halts with 403 when {@code claimed} names somebody other than the caller.
+     */
+    static String actingAs(Request req, String claimed) {
+        String email = req.attribute("email");
+        if (email == null) {
+            return claimed;
+        }
+        if (claimed != null && !claimed.trim().isEmpty() && !claimed.equalsIgnoreCase(email)) {
+            halt(403, Json.toJson(new ErrorResponse("You can only act as the signed-in user")));
+        }
+        return email;
+    }
+
+    private static boolean isPublic(Request req) {
+        String path = req.pathInfo();
+        if (PUBLIC_PATHS.contains(path)) {
+            return true;
+        }
+        if (req.requestMethod().equals("GET")) {
+            for (String prefix : PUBLIC_READ_PREFIXES) {
+                if (path.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private static Object signUp(Request req, Response res) {
         try {
-            UserCredentials credentials = gson.fromJson(req.body(), UserCredentials.class);
-            UserRecord.CreateRequest request = new UserRecord.CreateRequest()
-                    .setEmail(credentials.email)
-                    .setPassword(credentials.password);
-
-            UserRecord userRecord = FirebaseAuth.getInstance().createUser(request);
+            UserCredentials credentials = Json.read(req.body(), UserCredentials.class);
+            IdentityProvider.Identity identity = identities.createUser(credentials.email, credentials.password);
             res.status(200);
-            return gson.toJson(new AuthResponse(userRecord.getUid(), userRecord.getEmail(), true));
-        } catch (FirebaseAuthException e) {
+            return Json.toJson(new AuthResponse(identity.uid, identity.email, true,
+                    sessions.mint(identity.uid, identity.email)));
+        } catch (IdentityProvider.IdentityException e) {
             res.status(400);
-            return gson.toJson(new ErrorResponse(e.getMessage()));
+            return Json.toJson(new ErrorResponse(e.getMessage()));
         }
     }
 
+    /**
+     * Mints a session token for a Firebase ID token ({@code idToken}) or a correct email and
+     * password.
+     */
     private static Object signIn(Request req, Response res) {
         try {
-            UserCredentials credentials = gson.fromJson(req.body(), UserCredentials.class);
-            String uid = FirebaseAuth.getInstance().getUserByEmail(credentials.email).getUid();
+            UserCredentials credentials = Json.read(req.body(), UserCredentials.class);
+            if (credentials == null) {
+                res.status(400);
+                return Json.toJson(new ErrorResponse("Invalid email or password"));
+            }
+            IdentityProvider.Identity identity = credentials.idToken != null
+                    ? identities.verifyIdToken(credentials.idToken)
+                    : identities.signIn(credentials.email, credentials.password);
             res.status(200);
             Boolean success = true;
-            return gson.toJson(new AuthResponse(uid, credentials.email, success));
-        } catch (FirebaseAuthException e) {
+            return Json.toJson(new AuthResponse(identity.uid, identity.email, success,
+                    sessions.mint(identity.uid, identity.email)));
+        } catch (IdentityProvider.IdentityException e) {
+            System.out.println("Sign-in refused: " + e.getMessage());
             res.status(400);
-            return gson.toJson(new ErrorResponse("Invalid email or password"));
+            return Json.toJson(new ErrorResponse("Invalid email or password"));
         }
     }
 
@@ -52,13 +128,14 @@ public class AuthController {
         // Firebase doesn't have a server-side sign-out mechanism
         // Client-side sign-out is sufficient
         res.status(200);
-        return gson.toJson(new SuccessResponse("Signed out successfully"));
+        return Json.toJson(new SuccessResponse("Signed out successfully"));
     }
 
     private static class UserCredentials {
 
         String email;
         String password;
+        String idToken;
     }
 
     private static class AuthResponse {
@@ -66,11 +143,13 @@ public class AuthController {
         String uid;
         String email;
         Boolean success;
+        String token;
 
-        AuthResponse(String uid, String email, Boolean success) {
+        AuthResponse(String uid, String email, Boolean success, String token) {
             this.uid = uid;
             this.email = email;
             this.success = success;
+            this.token = token;
         }
     }
 
@@ -1,101 +1,247 @@
 package com.fitnessapp;
 
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
 
 import org.bson.Document;
 
-import com.google.gson.Gson;
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
 
+import spark.Request;
+import spark.Response;
+import static spark.Spark.get;
 import static spark.Spark.port;
 import static spark.Spark.post;
 
 public class BMIController {
 
-    private static MongoCollection<Document> bmiCollection;
-    private static final Gson gson = new Gson();
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final String[] CATEGORIES = {"Underweight", "Normal Weight", "Overweight", "Obese"};
+    // Indexed by [category][under 30 ? 0 : 1][male ? 0 : 1]; only a few cells differ.
+    private static final String[][][] RECOMMENDATIONS = new String[CATEGORIES.length][2][2];
+
+    static {
+        for (int category = 0; category < CATEGORIES.length; category++) {
+            for (int ageBand = 0; ageBand < 2; ageBand++) {
+                for (int gender = 0; gender < 2; gender++) {
+                    RECOMMENDATIONS[category][ageBand][gender] = buildRecommendation(category, ageBand == 0, gender == 0).intern();
+                }
+            }
+        }
+    }
+
+    private static BMIRepository records;
 
     public static void main(String[] args) {
         port(8080);
     }
 
-    public static void init(MongoDatabase database) {
+    public static void init(Callable<BMIRepository> repository) {
+        post("/bmi", BMIController::calculate);
 
-        bmiCollection = database.getCollection("BMI");
+        post("/bmi/batch", BMIController::calculateBatch);
 
-        post("/bmi", (req, res) -> {
+        get("/bmi/history", BMIController::getHistory);
 
-            BMIInput input = gson.fromJson(req.body(), BMIInput.class);
+        Startup.start("bmi", () -> connect(repository.call()), "/bmi");
+    }
 
-            if (!isValidInput(input)) {
-                res.status(400);
-                return "Invalid input";
-            }
+    /**
+     * Sets up storage without registering any routes.
+     */
+    static void connect(BMIRepository repository) {
+        records = repository;
+    }
+
+    static Object calculate(Request req, Response res) throws IOException {
+        BMIInput input = Json.read(req.body(), BMIInput.class);
+
+        if (!isValidInput(input)) {
+            res.status(400);
+            return "Invalid input";
+        }
+        input.user = AuthController.actingAs(req, input.user);
+
+        // Calculate BMI
+        double bmi = calculateBMI(input.weight, input.height);
+        BMIResult result = evaluate(input, bmi);
+        result.mealPlan = FoodChartController.mealPlanFor(bmi);
+
+        records.insert(toDocument(input, result));
+
+        // Return result as JSON
+        return Json.write(res, result);
+    }
+
+    /**
+     * Returns BMI trend points for a user between {@code from} and {@code to} (inclusive UTC
+     * dates, default: the last 90 days): average, minimum and maximum per day, week or month.
+     */
+    static Object getHistory(Request req, Response res) throws IOException {
+        String user = AuthController.actingAs(req, req.queryParams("user"));
+        String bucket = Optional.ofNullable(req.queryParams("bucket")).orElse("week");
+        if (user == null || !BMIRepository.HISTORY_BUCKETS.contains(bucket)) {
+            res.status(400);
+            return "user and a bucket of day, week or month are required";
+        }
+
+        LocalDate to;
+        LocalDate from;
+        try {
+            to = req.queryParams("to") != null ? LocalDate.parse(req.queryParams("to")) : LocalDate.now(ZoneOffset.UTC);
+            from = req.queryParams("from") != null ? LocalDate.parse(req.queryParams("from")) : to.minusDays(90);
+        } catch (DateTimeParseException e) {
+            res.status(400);
+            return "from and to must be dates (yyyy-MM-dd)";
+        }
 
-            // Calculate BMI
-            double bmi = calculateBMI(input.weight, input.height);
-            String category = getBMICategory(bmi);
-            String recommendation = getRecommendation(bmi, input.age, input.gender);
+        List<TrendPoint> points = new ArrayList<>();
+        for (Document group : records.history(user,
+                Date.from(from.atStartOfDay(ZoneOffset.UTC).toInstant()),
+                Date.from(to.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant()),
+                bucket)) {
+            points.add(new TrendPoint(group.getString("_id"),
+                    group.get("average", Number.class).doubleValue(),
+                    group.get("min", Number.class).doubleValue(),
+                    group.get("max", Number.class).doubleValue(),
+                    group.get("count", Number.class).intValue()));
+        }
 
-            // Create result object
-            BMIResult result = new BMIResult(bmi, category, recommendation);
+        return Json.write(res, points);
+    }
 
-            // Save to MongoDB
-            Document document = new Document()
-                    .append("user", input.user)
-                    .append("weight", input.weight)
-                    .append("height", input.height)
-                    .append("age", input.age)
-                    .append("gender", input.gender)
-                    .append("bmi", bmi)
-                    .append("category", category)
-                    .append("timestamp", LocalDateTime.now().toString());
+    /**
+     * Evaluates a JSON array of inputs, stores the valid ones in one batch
+     * and streams back one result per input, in order; invalid inputs get an error entry instead.
+     * When some valid inputs could not be stored the status is 207, those get an error entry too
+     * and X-Inserted-Count says how many were stored, so only the failed ones need sending again.
+     */
+    static Object calculateBatch(Request req, Response res) throws IOException {
+        List<BMIResult> results = new ArrayList<>();
+        List<Document> documents = new ArrayList<>();
+        // Index in results of each document.
+        List<Integer> positions = new ArrayList<>();
 
-            bmiCollection.insertOne(document);
+        try (JsonReader reader = new JsonReader(new StringReader(Optional.ofNullable(req.body()).orElse("")))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (results.size() == MAX_BATCH_SIZE) {
+                    res.status(413);
+                    return "At most " + MAX_BATCH_SIZE + " inputs per batch";
+                }
+                BMIInput input = Json.GSON.fromJson(reader, BMIInput.class);
+                if (!isValidInput(input)) {
+                    results.add(null);
+                    continue;
+                }
+                input.user = AuthController.actingAs(req, input.user);
+                BMIResult result = evaluate(input, calculateBMI(input.weight, input.height));
+                positions.add(results.size());
+                results.add(result);
+                documents.add(toDocument(input, result));
+            }
+            reader.endArray();
+        } catch (JsonParseException | IllegalStateException | IOException e) {
+            res.status(400);
+            return "Invalid input";
+        }
 
-            // Return result as JSON
-            return gson.toJson(result);
+        Map<Integer, String> storeErrors = new HashMap<>();
+        if (!documents.isEmpty()) {
+            for (Map.Entry<Integer, String> failed : records.insertAll(documents).entrySet()) {
+                storeErrors.put(positions.get(failed.getKey()), failed.getValue());
+            }
+        }
 
+        res.status(storeErrors.isEmpty() ? 200 : 207);
+        res.header("X-Inserted-Count", String.valueOf(documents.size() - storeErrors.size()));
+        return Json.stream(res, writer -> {
+            writer.beginArray();
+            for (int i = 0; i < results.size(); i++) {
+                BMIResult result = results.get(i);
+                if (result == null) {
+                    writer.beginObject().name("index").value(i).name("error").value("Invalid input").endObject();
+                } else if (storeErrors.containsKey(i)) {
+                    writer.beginObject().name("index").value(i).name("error").value("Not stored")
+                            .name("reason").value(storeErrors.get(i)).endObject();
+                } else {
+                    Json.GSON.toJson(result, BMIResult.class, writer);
+                }
+            }
+            writer.endArray();
         });
     }
 
+    static BMIResult evaluate(BMIInput input, double bmi) {
+        int category = categoryOf(bmi);
+        String recommendation = RECOMMENDATIONS[category][input.age < 30 ? 0 : 1][input.gender.equals("male") ? 0 : 1];
+        return new BMIResult(bmi, CATEGORIES[category], recommendation);
+    }
+
+    private static Document toDocument(BMIInput input, BMIResult result) {
+        return new Document()
+                .append("user", input.user)
+                .append("weight", input.weight)
+                .append("height", input.height)
+                .append("age", input.age)
+                .append("gender", input.gender)
+                .append("bmi", result.bmi)
+                .append("category", result.category)
+                .append("timestamp", new Date());
+    }
+
     private static boolean isValidInput(BMIInput input) {
-        return input.weight > 0 && input.height > 0 && input.age > 0
-                && (input.gender.equals("male") || input.gender.equals("female"));
+        return input != null && input.weight > 0 && input.height > 0 && input.age > 0
+                && ("male".equals(input.gender) || "female".equals(input.gender));
     }
 
     // Calculate BMI using the formula: weight / (height in meters)^2
-    private static double calculateBMI(double weight, double height) {
-        return weight / Math.pow(height / 100, 2); // height is in cm, convert to meters
+    static double calculateBMI(double weight, double height) {
+        double meters = height / 100; // height is in cm, convert to meters
+        return weight / (meters * meters);
+    }
+
+    static String getBMICategory(double bmi) {
+        return CATEGORIES[categoryOf(bmi)];
     }
 
-    private static String getBMICategory(double bmi) {
+    private static int categoryOf(double bmi) {
         if (bmi < 18.5) {
-            return "Underweight";
+            return 0;
         }
         if (bmi < 25) {
-            return "Normal Weight";
+            return 1;
         }
         if (bmi < 30) {
-            return "Overweight";
+            return 2;
         }
-        return "Obese";
+        return 3;
     }
 
-    private static String getRecommendation(double bmi, int age, String gender) {
+    private static String buildRecommendation(int category, boolean under30, boolean male) {
         StringBuilder recommendation = new StringBuilder();
 
-        if (bmi < 18.5) {
+        if (category == 0) {
             recommendation.append("Consider increasing your caloric intake with nutrient-rich foods. ");
-            if (age < 30) {
+            if (under30) {
                 recommendation.append("Focus on strength training to build muscle mass. ");
             }
-        } else if (bmi < 25) {
+        } else if (category == 1) {
             recommendation.append("Maintain your healthy lifestyle with regular exercise and balanced diet. ");
-        } else if (bmi < 30) {
+        } else if (category == 2) {
             recommendation.append("Consider reducing caloric intake and increasing physical activity. ");
-            if (gender.equals("male")) {
+            if (male) {
                 recommendation.append("Incorporate more cardio exercises. ");
             } else {
                 recommendation.append("Include both cardio and strength training. ");
@@ -108,7 +254,24 @@ public class BMIController {
         return recommendation.toString();
     }
 
-    private static class BMIInput {
+    private static class TrendPoint {
+
+        String bucket;
+        double average;
+        double min;
+        double max;
+        int count;
+
+        TrendPoint(String bucket, double average, double min, double max, int count) {
+            this.bucket = bucket;
+            this.average = average;
+            this.min = min;
+            this.max = max;
+            this.count = count;
+        }
+    }
+
+    static class BMIInput {
 
         double weight;
         double height;
@@ -117,11 +280,12 @@ public class BMIController {
         String user;
     }
 
-    private static class BMIResult {
+    static class BMIResult {
 
         double bmi;
         String category;
         String recommendation;
+        List<FoodChartController.FoodItem> mealPlan;
 
         BMIResult(double bmi, String category, String recommendation) {
             this.bmi = bmi;
@@ -0,0 +1,39 @@
+package com.fitnessapp;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+
+/**
+ * Storage for BMI records: documents with user, weight, height, age, gender, bmi, category and a
+ * date timestamp.
+ */
+interface BMIRepository {
+
+    // day yyyy-MM-dd, week yyyy-Www (ISO weeks), month yyyy-MM; all UTC.
+    Set<String> HISTORY_BUCKETS = Set.of("day", "week", "month");
+
+    void insert(Document record);
+
+    /**
+     * Stores records independently: one failing does not stop the others. Returns why each
+     * record that was not stored failed, keyed by its index in {@code records}; empty when all
+     * were stored.
+     */
+    Map<Integer, String> insertAll(List<Document> records);
+
+    /**
+     * Groups the records of {@code user} timestamped in [{@code from}, {@code to}) by
+     * {@code bucket} and returns one document per group, ordered by key: the key as {@code _id},
+     * plus average, min and max bmi and count.
+     */
+    List<Document> history(String user, Date from, Date to, String bucket);
+
+    /**
+     * Every record of {@code user}, oldest first, read {@code batchSize} at a time.
+     */
+    Iterable<Document> records(String user, int batchSize);
+}
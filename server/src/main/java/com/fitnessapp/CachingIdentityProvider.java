@@ -0,0 +1,71 @@
+package com.fitnessapp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, time-limited cache of verified Firebase ID tokens in front of another provider, so an
+ * app that signs in again with the same token does not have it verified again. An entry lasts
+ * for the TTL or until the token expires, whichever comes first. Failed verifications are not
+ * cached, and neither are passwords: a password sign-in always asks the delegate.
+ */
+class CachingIdentityProvider implements IdentityProvider {
+
+    private final IdentityProvider delegate;
+    private final long ttlMs;
+    private final Map<String, CachedIdentity> cache;
+
+    CachingIdentityProvider(IdentityProvider delegate, int maxEntries, long ttlMs) {
+        this.delegate = delegate;
+        this.ttlMs = ttlMs;
+        this.cache = new LinkedHashMap<String, CachedIdentity>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedIdentity> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public Identity getUserByEmail(String email) throws IdentityException {
+        return delegate.getUserByEmail(email);
+    }
+
+    @Override
+    public Identity createUser(String email, String password) throws IdentityException {
+        return delegate.createUser(email, password);
+    }
+
+    @Override
+    public Identity signIn(String email, String password) throws IdentityException {
+        return delegate.signIn(email, password);
+    }
+
+    @Override
+    public Identity verifyIdToken(String idToken) throws IdentityException {
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            CachedIdentity cached = cache.get(idToken);
+            if (cached != null && cached.expiresAt > now) {
+                return cached.identity;
+            }
+        }
+        Identity identity = delegate.verifyIdToken(idToken);
+        long expiresAt = identity.expiresAt > 0 ? Math.min(now + ttlMs, identity.expiresAt) : now + ttlMs;
+        synchronized (cache) {
+            cache.put(idToken, new CachedIdentity(identity, expiresAt));
+        }
+        return identity;
+    }
+
+    private static class CachedIdentity {
+
+        final Identity identity;
+        final long expiresAt;
+
+        CachedIdentity(Identity identity, long expiresAt) {
+            this.identity = identity;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.fitnessapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+import org.bson.Document;
+
+import spark.Request;
+import spark.Response;
+import static spark.Spark.get;
+
+/**
+ * GET /export streams everything stored about the signed-in user as newline-delimited JSON, one
+ * stored document per line tagged with its collection: {"collection":"workouts","record":{...}}.
+ * A last line {"complete":true,"records":n} tells a finished export from one that was cut short.
+ *
+ * Each collection is read through its cursor export.batchSize (500) documents at a time and
+ * written straight to the response, so an export needs the same memory however much the user
+ * stored. Only the session's own data can be exported: an {@code email} parameter naming anyone
+ * else is refused. At most export.maxConcurrent (4) exports run at once.
+ */
+public class ExportController {
+
+    private static final int BATCH_SIZE = Integer.getInteger("export.batchSize", 500);
+    private static final Semaphore running = new Semaphore(Integer.getInteger("export.maxConcurrent", 4));
+
+    private static BMIRepository bmiRepository;
+    private static WaterRepository waterRepository;
+    private static WorkoutRepository workoutRepository;
+    private static PostRepository postRepository;
+
+    public static void init(Callable<BMIRepository> bmi, Callable<WaterRepository> water,
+            Callable<WorkoutRepository> workouts, Callable<PostRepository> posts) {
+        get("/export", ExportController::export);
+
+        Startup.start("export", () -> connect(bmi.call(), water.call(), workouts.call(), posts.call()), "/export");
+    }
+
+    /**
+     * Sets up storage without registering any routes.
+     */
+    static void connect(BMIRepository bmi, WaterRepository water, WorkoutRepository workouts, PostRepository posts) {
+        bmiRepository = bmi;
+        waterRepository = water;
+        workoutRepository = workouts;
+        postRepository = posts;
+    }
+
+    static Object export(Request req, Response res) throws IOException {
+        String email = req.attribute("email");
+        if (email == null) {
+            res.status(401);
+            return Json.toJson(new ErrorResponse("Sign in required"));
+        }
+        String requested = req.queryParams("email");
+        if (requested != null && !requested.trim().isEmpty() && !requested.equalsIgnoreCase(email)) {
+            res.status(403);
+            return Json.toJson(new ErrorResponse("You can only export your own data."));
+        }
+        if (!running.tryAcquire()) {
+            res.status(429);
+            res.header("Retry-After", "10");
+            return Json.toJson(new ErrorResponse("Too many exports running, try again shortly."));
+        }
+
+        try {
+            res.status(200);
+            res.header("Content-Disposition", "attachment; filename=\"fitsync-export.ndjson\"");
+            return Json.streamLines(res, lines -> {
+                Document level = waterRepository.levelRecord(email);
+                long records = write(lines, "BMI", bmiRepository.records(email, BATCH_SIZE))
+                        + write(lines, "waterIntakes", level == null ? List.of() : List.of(level))
+                        + write(lines, "waterIntakeDays", waterRepository.history(email, BATCH_SIZE))
+                        + write(lines, "workouts", workoutRepository.workouts(email, BATCH_SIZE))
+                        + write(lines, "posts", postRepository.postsBy(email, BATCH_SIZE));
+                lines.json.beginObject().name("complete").value(true).name("records").value(records).endObject();
+                lines.endLine();
+            });
+        } finally {
+            running.release();
+        }
+    }
+
+    /**
+     * Writes every document of {@code records} on a line of its own and returns how many there
+     * were. Closes the cursor even when the client goes away halfway.
+     */
+    private static long write(Json.LineWriter lines, String collection, Iterable<Document> records) throws IOException {
+        Iterator<Document> cursor = records.iterator();
+        try {
+            long count = 0;
+            while (cursor.hasNext()) {
+                lines.json.beginObject().name("collection").value(collection).name("record");
+                Json.writeDocument(lines.json, cursor.next());
+                lines.json.endObject();
+                lines.endLine();
+                count++;
+            }
+            return count;
+        } finally {
+            if (cursor instanceof Closeable) {
+                ((Closeable) cursor).close();
+            }
+        }
+    }
+
+    private static class ErrorResponse {
+
+        final String error;
+
+        ErrorResponse(String error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.fitnessapp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.bson.Document;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+
+/**
+ * Pushes feed changes to the clients connected to the feed WebSocket, so that an open feed no
+ * longer has to poll. Frames have the shape of a GET /posts/changes response (epoch, version,
+ * resync and changes); connecting with {@code ?since=<version>&epoch=<epoch>} first delivers what
+ * was missed since then.
+ *
+ * A single thread reads new changes from the {@link FeedChangeLog}, serializes each batch once and
+ * hands the same frame to every subscriber. Sends are asynchronous and one at a time per
+ * subscriber, with at most {@code queueCapacity} frames waiting behind; a subscriber that falls
+ * further behind has its backlog replaced by a resync frame and reloads the feed. An idle
+ * subscriber holds no thread.
+ */
+@WebSocket
+class FeedBroadcaster {
+
+    private final FeedChangeLog log;
+    private final int queueCapacity;
+    private final int maxSubscribers;
+    private final Map<Session, Subscriber> subscribers = new ConcurrentHashMap<>();
+    // Handed to the broadcaster thread, which sends their catch-up in order with the live frames.
+    private final Queue<Subscriber> joining = new ConcurrentLinkedQueue<>();
+    private final LongAdder resyncs = new LongAdder();
+    private final Thread thread = new Thread(this::run, "feed-broadcaster");
+    // Written by the broadcaster thread only.
+    private long broadcastVersion;
+
+    FeedBroadcaster(FeedChangeLog log, int queueCapacity, int maxSubscribers) {
+        this.log = log;
+        this.queueCapacity = queueCapacity;
+        this.maxSubscribers = maxSubscribers;
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        broadcastVersion = log.version();
+        thread.start();
+    }
+
+    /**
+     * Wakes the broadcaster after a change was appended to the log. Cheap enough for the request
+     * thread: the fan-out happens on the broadcaster thread.
+     */
+    void changed() {
+        LockSupport.unpark(thread);
+    }
+
+    int subscribers() {
+        return subscribers.size();
+    }
+
+    long resyncs() {
+        return resyncs.sum();
+    }
+
+    @OnWebSocketConnect
+    public void onConnect(Session session) {
+        if (subscribers.size() >= maxSubscribers) {
+            session.close(StatusCode.TRY_AGAIN_LATER, "Too many feed subscribers");
+            return;
+        }
+        Subscriber subscriber = new Subscriber(session, longParameter(session, "since"), parameter(session, "epoch"));
+        subscribers.put(session, subscriber);
+        joining.add(subscriber);
+        LockSupport.unpark(thread);
+    }
+
+    @OnWebSocketClose
+    public void onClose(Session session, int statusCode, String reason) {
+        subscribers.remove(session);
+    }
+
+    private void run() {
+        while (!Thread.interrupted()) {
+            for (Subscriber subscriber; (subscriber = joining.poll()) != null; ) {
+                catchUp(subscriber);
+            }
+            publish();
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * Sends everything appended since the last broadcast to all subscribers as one frame.
+     */
+    private void publish() {
+        if (log.version() == broadcastVersion) {
+            return;
+        }
+        List<Document> delta = log.since(broadcastVersion);
+        String frame;
+        if (delta == null) {
+            // Fell behind the log itself: everyone has to reload.
+            broadcastVersion = log.version();
+            frame = resyncFrame(broadcastVersion);
+        } else {
+            broadcastVersion += delta.size();
+            frame = frame(broadcastVersion, delta);
+        }
+        for (Subscriber subscriber : subscribers.values()) {
+            // One that connected since the last catch-up gets these changes with its catch-up.
+            if (subscriber.caughtUp) {
+                subscriber.offer(frame, broadcastVersion);
+            }
+        }
+    }
+
+    /**
+     * Sends a new subscriber the changes between the version it asked for and the last broadcast;
+     * the ones after that reach it with the next broadcast. Until then it is left out of
+     * broadcasts, so that no live frame overtakes its catch-up.
+     */
+    private void catchUp(Subscriber subscriber) {
+        subscriber.offer(catchUpFrame(subscriber), broadcastVersion);
+        subscriber.caughtUp = true;
+    }
+
+    private String catchUpFrame(Subscriber subscriber) {
+        if (subscriber.since == null) {
+            return frame(broadcastVersion, List.of());
+        }
+        List<Document> delta = subscriber.epoch == null || subscriber.epoch.equals(log.epoch())
+                ? log.since(subscriber.since) : null;
+        if (delta == null) {
+            return resyncFrame(broadcastVersion);
+        }
+        // Empty when the client already saw a change that is still to be broadcast.
+        int missedCount = (int) Math.max(0, broadcastVersion - subscriber.since);
+        return frame(broadcastVersion, new ArrayList<>(delta.subList(0, missedCount)));
+    }
+
+    private String frame(long version, List<Document> changes) {
+        return Json.toJson(new Document("epoch", log.epoch())
+                .append("version", version)
+                .append("resync", false)
+                .append("changes", changes));
+    }
+
+    private String resyncFrame(long version) {
+        return Json.toJson(new Document("epoch", log.epoch())
+                .append("version", version)
+                .append("resync", true));
+    }
+
+    private static String parameter(Session session, String name) {
+        List<String> values = session.getUpgradeRequest().getParameterMap().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static Long longParameter(Session session, String name) {
+        String value = parameter(session, name);
+        try {
+            return value == null ? null : Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private class Subscriber implements WriteCallback {
+
+        final Session session;
+        final Long since;
+        final String epoch;
+        // Set once its catch-up frame is queued; read and written by the broadcaster thread only.
+        boolean caughtUp;
+        // Frames waiting behind the one being sent; guarded by this.
+        private final ArrayDeque<String> queue = new ArrayDeque<>();
+        private boolean sending;
+
+        Subscriber(Session session, Long since, String epoch) {
+            this.session = session;
+            this.since = since;
+            this.epoch = epoch;
+        }
+
+        synchronized void offer(String frame, long version) {
+            if (queue.size() >= queueCapacity) {
+                // Too slow to keep up: whatever it missed, it reloads the feed.
+                queue.clear();
+                queue.add(resyncFrame(version));
+                resyncs.increment();
+            } else {
+                queue.add(frame);
+            }
+            if (!sending) {
+                sendNext();
+            }
+        }
+
+        private void sendNext() {
+            String next = queue.poll();
+            sending = next != null;
+            if (sending) {
+                session.getRemote().sendString(next, this);
+            }
+        }
+
+        @Override
+        public synchronized void writeSuccess() {
+            sendNext();
+        }
+
+        @Override
+        public void writeFailed(Throwable x) {
+            subscribers.remove(session);
+            session.close();
+        }
+    }
+}
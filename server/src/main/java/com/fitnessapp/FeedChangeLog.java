@@ -0,0 +1,62 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.bson.Document;
+
+/**
+ * Bounded, in-memory log of recent feed mutations, each stamped with a monotonically increasing
+ * version. Clients remember the last version they saw and ask for everything after it; once they
+ * fall further behind than the log reaches they have to reload the feed.
+ *
+ * Versions restart with the process, so every log also carries a random epoch that clients echo
+ * back to detect a restart.
+ */
+class FeedChangeLog {
+
+    private final String epoch = UUID.randomUUID().toString();
+    private final Document[] ring;
+    private long version;
+
+    FeedChangeLog(int capacity) {
+        this.ring = new Document[capacity];
+    }
+
+    String epoch() {
+        return epoch;
+    }
+
+    synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Records a change and returns it, stamped with its version.
+     */
+    synchronized Document append(String type, String postId, String field, Object value) {
+        version++;
+        Document change = new Document("version", version)
+                .append("type", type)
+                .append("postId", postId)
+                .append(field, value);
+        ring[(int) (version % ring.length)] = change;
+        return change;
+    }
+
+    /**
+     * Returns the changes after {@code since} in version order, or null when they are no longer
+     * (or were never) in the log.
+     */
+    synchronized List<Document> since(long since) {
+        if (since < 0 || since > version || version - since > ring.length) {
+            return null;
+        }
+        List<Document> changes = new ArrayList<>((int) (version - since));
+        for (long v = since + 1; v <= version; v++) {
+            changes.add(ring[(int) (v % ring.length)]);
+        }
+        return changes;
+    }
+}
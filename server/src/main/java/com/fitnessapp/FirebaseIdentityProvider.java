@@ -0,0 +1,119 @@
+package com.fitnessapp;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import com.google.firebase.auth.UserRecord;
+
+class FirebaseIdentityProvider implements IdentityProvider {
+
+    private static final String PASSWORD_SIGN_IN_URL = "https://identitytoolkit.googleapis.com/v1/accounts:signInWithPassword?key=";
+
+    private final Supplier<FirebaseAuth> auth;
+    private final String apiKey;
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    /**
+     * {@code auth} is asked for the Firebase client on every call, so it can be initialized on
+     * first use. Passwords are checked against Firebase's sign-in endpoint with the project's web
+     * {@code apiKey}; without one, only Firebase ID tokens can sign in.
+     */
+    FirebaseIdentityProvider(Supplier<FirebaseAuth> auth, String apiKey) {
+        this.auth = auth;
+        this.apiKey = apiKey;
+    }
+
+    @Override
+    public Identity getUserByEmail(String email) throws IdentityException {
+        try {
+            UserRecord user = auth.get().getUserByEmail(email);
+            return new Identity(user.getUid(), user.getEmail());
+        } catch (FirebaseAuthException e) {
+            throw new IdentityException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Identity createUser(String email, String password) throws IdentityException {
+        try {
+            UserRecord user = auth.get().createUser(new UserRecord.CreateRequest()
+                    .setEmail(email)
+                    .setPassword(password));
+            return new Identity(user.getUid(), user.getEmail());
+        } catch (FirebaseAuthException e) {
+            throw new IdentityException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The Admin SDK cannot check a password, so this signs in through Firebase's REST endpoint.
+     * Its answer comes straight from Google over TLS, so the account in it is used as is, without
+     * verifying the ID token it also carries.
+     */
+    @Override
+    public Identity signIn(String email, String password) throws IdentityException {
+        if (apiKey == null) {
+            throw new IdentityException("Password sign-in needs firebase.apiKey; send a Firebase ID token instead", null);
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(PASSWORD_SIGN_IN_URL + apiKey))
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(Json.toJson(new PasswordSignIn(email, password))))
+                .build();
+        HttpResponse<String> response;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            throw new IdentityException("Password check failed: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdentityException("Password check interrupted", e);
+        }
+        PasswordSignInResult result = response.statusCode() == 200
+                ? Json.read(response.body(), PasswordSignInResult.class) : null;
+        if (result == null || result.localId == null) {
+            throw new IdentityException("Invalid email or password", null);
+        }
+        return new Identity(result.localId, result.email);
+    }
+
+    @Override
+    public Identity verifyIdToken(String idToken) throws IdentityException {
+        try {
+            FirebaseToken token = auth.get().verifyIdToken(idToken);
+            Object expiry = token.getClaims().get("exp");
+            return new Identity(token.getUid(), token.getEmail(),
+                    expiry instanceof Number ? ((Number) expiry).longValue() * 1000 : 0);
+        } catch (FirebaseAuthException | IllegalArgumentException e) {
+            throw new IdentityException(e.getMessage(), e);
+        }
+    }
+
+    private static class PasswordSignIn {
+
+        final String email;
+        final String password;
+        final boolean returnSecureToken = true;
+
+        PasswordSignIn(String email, String password) {
+            this.email = email;
+            this.password = password;
+        }
+    }
+
+    private static class PasswordSignInResult {
+
+        String localId;
+        String email;
+    }
+}
@@ -1,15 +1,15 @@
 package com.fitnessapp;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.bson.Document;
 
-import com.google.gson.Gson;
-import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
-
 import spark.Request;
 import spark.Response;
 import static spark.Spark.get;
@@ -17,40 +17,158 @@ import static spark.Spark.port;
 
 public class FoodChartController {
 
-    private static MongoCollection<Document> foodCollection;
-    private static MongoClient mongoClient;
+    private static FoodChartRepository chart;
+    private static volatile Snapshot snapshot;
 
     public static void main(String[] args) {
         port(8080);
     }
 
-    public static void init(MongoDatabase database) {
+    public static void init(Callable<FoodChartRepository> repository) {
 
         get("/food-chart", FoodChartController::show);
+        get("/food-chart/query", FoodChartController::query);
+
+        Startup.start("foodChart", () -> connect(repository.call()), "/food-chart");
+    }
 
-        foodCollection = database.getCollection("foodchart");
+    /**
+     * Loads the chart and starts watching it, without registering any routes. Throws when the
+     * chart cannot be loaded, before anything is watched, so it can simply be called again. The
+     * watcher loads it once more after subscribing, which picks up changes made in between.
+     */
+    static void connect(FoodChartRepository repository) {
+        chart = repository;
+        refresh();
+
+        Thread watcher = new Thread(() -> chart.watch(FoodChartController::refreshQuietly), "foodchart-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
     }
 
     public static Object show(Request req, Response res) {
-        res.status(200);
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = refresh();
+        }
+
         res.type("application/json");
+        res.header("ETag", current.etag);
+        res.header("Cache-Control", "no-cache");
+
+        if (matchesETag(req.headers("If-None-Match"), current.etag)) {
+            res.status(304);
+            return "";
+        }
+
+        res.status(200);
+        return current.body;
+    }
+
+    public static Object query(Request req, Response res) throws IOException {
+        Double bmi = null;
+        if (req.queryParams("bmi") != null) {
+            try {
+                bmi = Double.parseDouble(req.queryParams("bmi"));
+            } catch (NumberFormatException e) {
+                res.status(400);
+                return Json.toJson(new ErrorResponse("bmi must be a number."));
+            }
+        }
+
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = refresh();
+        }
+
+        String fallbackCategory = bmi != null ? BMIController.getBMICategory(bmi) : null;
+        res.status(200);
+        return Json.write(res, current.index.query(bmi, fallbackCategory,
+                req.queryParams("category"), req.queryParams("mealType")));
+    }
+
+    /**
+     * Returns the chart rows recommended for {@code bmi}, or an empty list while the chart has
+     * not been loaded yet. Never queries the database.
+     */
+    static List<FoodItem> mealPlanFor(double bmi) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return List.of();
+        }
+        return current.index.query(bmi, BMIController.getBMICategory(bmi), null, null);
+    }
+
+    /**
+     * Rebuilds the serialized chart from storage and publishes it for subsequent requests.
+     */
+    private static synchronized Snapshot refresh() {
         List<FoodItem> foodChart = getFoodChart();
-        return new Gson().toJson(foodChart);
+        byte[] body = Json.toJson(foodChart).getBytes(StandardCharsets.UTF_8);
+        String etag = etagOf(body);
+        Snapshot current = snapshot;
+        if (current == null || !current.etag.equals(etag)) {
+            current = new Snapshot(body, etag, new FoodChartIndex(foodChart));
+            snapshot = current;
+            System.out.println("Food chart cache rebuilt (" + body.length + " bytes, ETag " + current.etag + ").");
+        }
+        return current;
+    }
+
+    /**
+     * Like {@link #refresh}, for the watcher: a chart that fails to load (a malformed row, storage
+     * down) leaves the last good one in place until the next change, instead of ending the watch.
+     */
+    private static void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            System.out.println("Food chart refresh failed, keeping the cached chart: " + e);
+        }
+    }
 
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String etagOf(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder etag = new StringBuilder("\"");
+            for (int i = 0; i < 16; i++) {
+                etag.append(String.format("%02x", digest[i]));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    private static List<FoodItem> getFoodChart() {
+    static List<FoodItem> getFoodChart() {
         List<FoodItem> foodChart = new ArrayList<>();
 
-        for (Document doc : foodCollection.find()) {
+        for (Document doc : chart.rows()) {
             String bmiRange = doc.getString("BMI Range");
             String bmiCategory = doc.getString("BMI Category");
             String mealType = doc.getString("Meal Type");
             String foodsList = doc.getString("Foods List");
-            int caloriesPerServing = doc.getInteger("Calories per Serving");
+            // Number rather than Integer: rows seeded from JSON carry longs.
+            int caloriesPerServing = doc.get("Calories per Serving", Number.class).intValue();
             String nutritionInfo = doc.getString("Nutrition Information");
-            int proteinContent = doc.getInteger("Protein Content (g)");
-            int monthsToFollow = doc.getInteger("Months to Follow");
+            int proteinContent = doc.get("Protein Content (g)", Number.class).intValue();
+            int monthsToFollow = doc.get("Months to Follow", Number.class).intValue();
 
             FoodItem foodItem = new FoodItem(bmiRange, bmiCategory, mealType, foodsList,
                     caloriesPerServing, nutritionInfo, proteinContent, monthsToFollow);
@@ -61,7 +179,20 @@ public class FoodChartController {
         return foodChart;
     }
 
-    private static class FoodItem {
+    private static class Snapshot {
+
+        final byte[] body;
+        final String etag;
+        final FoodChartIndex index;
+
+        Snapshot(byte[] body, String etag, FoodChartIndex index) {
+            this.body = body;
+            this.etag = etag;
+            this.index = index;
+        }
+    }
+
+    static class FoodItem {
 
         String bmiRange;
         String bmiCategory;
@@ -84,4 +215,13 @@ public class FoodChartController {
             this.monthsToFollow = monthsToFollow;
         }
     }
+
+    private static class ErrorResponse {
+
+        String error;
+
+        ErrorResponse(String error) {
+            this.error = error;
+        }
+    }
 }
@@ -0,0 +1,200 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable lookup structure over one snapshot of the food chart.
+ *
+ * Rows are addressed by their position in the chart. Every numeric "BMI Range" is parsed into
+ * a closed interval and the distinct interval endpoints split the number line into slots, each
+ * holding the sorted ordinals of the rows that cover it, so a BMI lookup is a single binary
+ * search. Category and meal type lookups are plain hash buckets of sorted ordinals.
+ */
+class FoodChartIndex {
+
+    private static final Pattern NUMBER = Pattern.compile("\\d+(?:\\.\\d+)?");
+    private static final int[] NONE = new int[0];
+
+    private final List<FoodChartController.FoodItem> rows;
+    private final double[] boundaries;
+    // Slot 2i is the open gap just below boundaries[i], slot 2i + 1 is boundaries[i] itself and
+    // the last slot is everything above the highest boundary.
+    private final int[][] slots;
+    private final Map<String, int[]> byCategory;
+    private final Map<String, int[]> byMealType;
+
+    FoodChartIndex(List<FoodChartController.FoodItem> rows) {
+        this.rows = Collections.unmodifiableList(new ArrayList<>(rows));
+
+        double[] lows = new double[rows.size()];
+        double[] highs = new double[rows.size()];
+        TreeSet<Double> endpoints = new TreeSet<>();
+        Map<String, List<Integer>> categories = new HashMap<>();
+        Map<String, List<Integer>> mealTypes = new HashMap<>();
+
+        for (int i = 0; i < rows.size(); i++) {
+            FoodChartController.FoodItem row = rows.get(i);
+            double[] range = parseRange(row.bmiRange);
+            lows[i] = range[0];
+            highs[i] = range[1];
+            if (!Double.isNaN(range[0])) {
+                endpoints.add(range[0]);
+                endpoints.add(range[1]);
+            }
+            categories.computeIfAbsent(key(row.bmiCategory), k -> new ArrayList<>()).add(i);
+            mealTypes.computeIfAbsent(key(row.mealType), k -> new ArrayList<>()).add(i);
+        }
+
+        boundaries = new double[endpoints.size()];
+        int b = 0;
+        for (double endpoint : endpoints) {
+            boundaries[b++] = endpoint;
+        }
+
+        slots = new int[2 * boundaries.length + 1][];
+        for (int s = 0; s < slots.length; s++) {
+            double probe = probe(s);
+            List<Integer> covering = new ArrayList<>();
+            for (int i = 0; i < rows.size(); i++) {
+                if (lows[i] <= probe && probe <= highs[i]) {
+                    covering.add(i);
+                }
+            }
+            slots[s] = toArray(covering);
+        }
+
+        byCategory = toBuckets(categories);
+        byMealType = toBuckets(mealTypes);
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    /**
+     * Returns the rows matching every supplied criterion; null criteria are ignored. When the
+     * chart has no parseable range covering {@code bmi}, rows are matched on
+     * {@code fallbackCategory} instead.
+     */
+    List<FoodChartController.FoodItem> query(Double bmi, String fallbackCategory, String category, String mealType) {
+        int[] result = null;
+
+        if (bmi != null) {
+            int[] covering = slots[slotOf(bmi)];
+            if (covering.length == 0 && fallbackCategory != null) {
+                covering = byCategory.getOrDefault(key(fallbackCategory), NONE);
+            }
+            result = covering;
+        }
+        if (category != null) {
+            result = intersect(result, byCategory.getOrDefault(key(category), NONE));
+        }
+        if (mealType != null) {
+            result = intersect(result, byMealType.getOrDefault(key(mealType), NONE));
+        }
+
+        if (result == null) {
+            return rows;
+        }
+        List<FoodChartController.FoodItem> matches = new ArrayList<>(result.length);
+        for (int ordinal : result) {
+            matches.add(rows.get(ordinal));
+        }
+        return matches;
+    }
+
+    private int slotOf(double bmi) {
+        int position = Arrays.binarySearch(boundaries, bmi);
+        return position >= 0 ? 2 * position + 1 : 2 * (-position - 1);
+    }
+
+    private double probe(int slot) {
+        int i = slot / 2;
+        if (slot % 2 == 1) {
+            return boundaries[i];
+        }
+        if (boundaries.length == 0) {
+            return 0;
+        }
+        if (i == 0) {
+            return boundaries[0] - 1;
+        }
+        if (i == boundaries.length) {
+            return boundaries[i - 1] + 1;
+        }
+        return (boundaries[i - 1] + boundaries[i]) / 2;
+    }
+
+    /**
+     * Parses ranges such as "18.5-24.9", "< 18.5", "Below 18.5", "30+" or "30 and above" into
+     * {low, high}; both are NaN when the text carries no number.
+     */
+    static double[] parseRange(String text) {
+        if (text == null) {
+            return new double[]{Double.NaN, Double.NaN};
+        }
+        List<Double> numbers = new ArrayList<>(2);
+        Matcher matcher = NUMBER.matcher(text);
+        while (matcher.find() && numbers.size() < 2) {
+            numbers.add(Double.parseDouble(matcher.group()));
+        }
+        if (numbers.isEmpty()) {
+            return new double[]{Double.NaN, Double.NaN};
+        }
+        if (numbers.size() == 2) {
+            return new double[]{Math.min(numbers.get(0), numbers.get(1)), Math.max(numbers.get(0), numbers.get(1))};
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (lower.contains("<") || lower.contains("below") || lower.contains("under") || lower.contains("less")) {
+            return new double[]{Double.NEGATIVE_INFINITY, Math.nextDown(numbers.get(0))};
+        }
+        return new double[]{numbers.get(0), Double.POSITIVE_INFINITY};
+    }
+
+    private static String key(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static int[] intersect(int[] left, int[] right) {
+        if (left == null) {
+            return right;
+        }
+        int[] out = new int[Math.min(left.length, right.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < left.length && j < right.length; ) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                out[n++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static Map<String, int[]> toBuckets(Map<String, List<Integer>> lists) {
+        Map<String, int[]> buckets = new HashMap<>();
+        lists.forEach((k, v) -> buckets.put(k, toArray(v)));
+        return buckets;
+    }
+
+    private static int[] toArray(List<Integer> ordinals) {
+        int[] array = new int[ordinals.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ordinals.get(i);
+        }
+        return array;
+    }
+}
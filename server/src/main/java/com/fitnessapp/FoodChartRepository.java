@@ -0,0 +1,22 @@
+package com.fitnessapp;
+
+import java.util.List;
+
+import org.bson.Document;
+
+/**
+ * Storage for the food chart: one document per row, keyed by the chart's column names
+ * ("BMI Range", "Meal Type", ...).
+ */
+interface FoodChartRepository {
+
+    List<Document> rows();
+
+    /**
+     * Calls {@code onChange} once as soon as changes are being watched, so that one made before
+     * is not missed, and after that whenever the chart may have changed, until the calling thread
+     * is interrupted. Bursts of changes may be reported once, and a call does not guarantee the
+     * content differs.
+     */
+    void watch(Runnable onChange);
+}
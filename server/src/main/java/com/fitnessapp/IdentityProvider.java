@@ -0,0 +1,59 @@
+package com.fitnessapp;
+
+/**
+ * Looks up, creates and authenticates user accounts. Firebase in production; anything with the
+ * same behaviour (a local fake, a cache in front of another provider) can stand in for it.
+ */
+interface IdentityProvider {
+
+    /**
+     * Returns the account registered for {@code email}.
+     *
+     * @throws IdentityException when there is no such account or the lookup fails
+     */
+    Identity getUserByEmail(String email) throws IdentityException;
+
+    Identity createUser(String email, String password) throws IdentityException;
+
+    /**
+     * Returns the account registered for {@code email} if {@code password} is its password.
+     *
+     * @throws IdentityException when the email or password is wrong or the check fails
+     */
+    Identity signIn(String email, String password) throws IdentityException;
+
+    /**
+     * Returns the account a Firebase ID token was issued to, once its signature and expiry check
+     * out.
+     *
+     * @throws IdentityException when the token is not valid
+     */
+    Identity verifyIdToken(String idToken) throws IdentityException;
+
+    class Identity {
+
+        final String uid;
+        final String email;
+        // When the proof of this identity (an ID token) expires, in epoch ms; 0 when it does not.
+        final long expiresAt;
+
+        Identity(String uid, String email) {
+            this(uid, email, 0);
+        }
+
+        Identity(String uid, String email, long expiresAt) {
+            this.uid = uid;
+            this.email = email;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    class IdentityException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        IdentityException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
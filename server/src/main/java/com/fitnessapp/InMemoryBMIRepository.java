@@ -0,0 +1,150 @@
+package com.fitnessapp;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * BMI records held on the heap, per user, in timestamp order.
+ */
+class InMemoryBMIRepository implements BMIRepository {
+
+    private final Map<String, Records> byUser = new ConcurrentHashMap<>();
+
+    @Override
+    public void insert(Document record) {
+        if (!record.containsKey("_id")) {
+            record.put("_id", new ObjectId());
+        }
+        byUser.computeIfAbsent(record.getString("user"), k -> new Records()).add(record);
+    }
+
+    @Override
+    public Map<Integer, String> insertAll(List<Document> records) {
+        for (Document record : records) {
+            insert(record);
+        }
+        return Map.of();
+    }
+
+    @Override
+    public List<Document> history(String user, Date from, Date to, String bucket) {
+        Records records = byUser.get(user);
+        if (records == null) {
+            return new ArrayList<>();
+        }
+        Map<String, double[]> groups = new TreeMap<>();
+        for (Document record : records.between(from.getTime(), to.getTime())) {
+            LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(record.getDate("timestamp").getTime(), WaterIntakeBuffer.DAY_MS));
+            double bmi = record.get("bmi", Number.class).doubleValue();
+            // {sum, min, max, count}
+            double[] group = groups.computeIfAbsent(keyOf(day, bucket),
+                    k -> new double[]{0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0});
+            group[0] += bmi;
+            group[1] = Math.min(group[1], bmi);
+            group[2] = Math.max(group[2], bmi);
+            group[3]++;
+        }
+        List<Document> history = new ArrayList<>(groups.size());
+        groups.forEach((key, group) -> history.add(new Document("_id", key)
+                .append("average", group[0] / group[3])
+                .append("min", group[1])
+                .append("max", group[2])
+                .append("count", (int) group[3])));
+        return history;
+    }
+
+    @Override
+    public Iterable<Document> records(String user, int batchSize) {
+        Records records = byUser.get(user);
+        if (records == null) {
+            return List.of();
+        }
+        return () -> new Iterator<Document>() {
+            private List<Document> batch = List.of();
+            private int position;
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                if (position == batch.size()) {
+                    batch = records.slice(next, batchSize);
+                    next += batch.size();
+                    position = 0;
+                }
+                return position < batch.size();
+            }
+
+            @Override
+            public Document next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.get(position++);
+            }
+        };
+    }
+
+    private static String keyOf(LocalDate day, String bucket) {
+        switch (bucket) {
+            case "day":
+                return day.toString();
+            case "week":
+                return WorkoutSummaries.weekKey(day);
+            default:
+                return String.format("%04d-%02d", day.getYear(), day.getMonthValue());
+        }
+    }
+
+    /**
+     * One user's records sorted by timestamp. Records nearly always arrive in order, so inserts
+     * are appends.
+     */
+    private static class Records {
+
+        private final List<Document> sorted = new ArrayList<>();
+
+        synchronized void add(Document record) {
+            long timestamp = record.getDate("timestamp").getTime();
+            int index = sorted.size();
+            while (index > 0 && sorted.get(index - 1).getDate("timestamp").getTime() > timestamp) {
+                index--;
+            }
+            sorted.add(index, record);
+        }
+
+        synchronized List<Document> slice(int from, int length) {
+            int start = Math.min(from, sorted.size());
+            return new ArrayList<>(sorted.subList(start, Math.min(sorted.size(), start + length)));
+        }
+
+        synchronized List<Document> between(long from, long to) {
+            int start = firstAtOrAfter(from);
+            int end = firstAtOrAfter(to);
+            return new ArrayList<>(sorted.subList(start, Math.max(start, end)));
+        }
+
+        private int firstAtOrAfter(long timestamp) {
+            int low = 0;
+            int high = sorted.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sorted.get(mid).getDate("timestamp").getTime() < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
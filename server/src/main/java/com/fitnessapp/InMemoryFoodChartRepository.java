@@ -0,0 +1,65 @@
+package com.fitnessapp;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.bson.Document;
+
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * A chart held on the heap, replaced as a whole. It starts out empty unless seeded from a JSON
+ * file holding an array of rows, e.g. an export of the foodchart collection.
+ */
+class InMemoryFoodChartRepository implements FoodChartRepository {
+
+    private volatile List<Document> rows = List.of();
+    private long version;
+
+    static InMemoryFoodChartRepository fromFile(Path seedFile) throws IOException {
+        InMemoryFoodChartRepository repository = new InMemoryFoodChartRepository();
+        try (Reader in = Files.newBufferedReader(seedFile, StandardCharsets.UTF_8)) {
+            List<Document> rows = Json.GSON.fromJson(in, new TypeToken<List<Document>>() { }.getType());
+            repository.replace(rows != null ? rows : List.of());
+        }
+        return repository;
+    }
+
+    @Override
+    public List<Document> rows() {
+        return rows;
+    }
+
+    synchronized void replace(List<Document> rows) {
+        this.rows = List.copyOf(rows);
+        version++;
+        notifyAll();
+    }
+
+    @Override
+    public void watch(Runnable onChange) {
+        long seen;
+        synchronized (this) {
+            seen = version;
+        }
+        onChange.run();
+        while (!Thread.currentThread().isInterrupted()) {
+            synchronized (this) {
+                try {
+                    while (version == seen) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                seen = version;
+            }
+            onChange.run();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.fitnessapp;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Accounts held on the heap, for running without Firebase. Passwords are kept as salted
+ * PBKDF2 hashes; Firebase ID tokens cannot sign in here.
+ */
+class InMemoryIdentityProvider implements IdentityProvider {
+
+    private static final int ITERATIONS = 10_000;
+
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    @Override
+    public Identity getUserByEmail(String email) throws IdentityException {
+        return account(email).identity;
+    }
+
+    @Override
+    public Identity createUser(String email, String password) throws IdentityException {
+        if (email == null || email.trim().isEmpty()) {
+            throw new IdentityException("An email is required", null);
+        }
+        if (password == null || password.length() < 6) {
+            throw new IdentityException("The password must be at least 6 characters", null);
+        }
+        byte[] salt = new byte[16];
+        random.nextBytes(salt);
+        Identity created = new Identity(UUID.randomUUID().toString().replace("-", ""), email);
+        if (accounts.putIfAbsent(email, new Account(created, salt, hash(password, salt))) != null) {
+            throw new IdentityException("The user with the provided email already exists", null);
+        }
+        return created;
+    }
+
+    @Override
+    public Identity signIn(String email, String password) throws IdentityException {
+        Account account = account(email);
+        if (password == null || !MessageDigest.isEqual(account.hash, hash(password, account.salt))) {
+            throw new IdentityException("Invalid email or password", null);
+        }
+        return account.identity;
+    }
+
+    @Override
+    public Identity verifyIdToken(String idToken) throws IdentityException {
+        throw new IdentityException("Firebase ID tokens need Firebase accounts", null);
+    }
+
+    private Account account(String email) throws IdentityException {
+        Account account = email != null ? accounts.get(email) : null;
+        if (account == null) {
+            throw new IdentityException("No user record found for the provided email: " + email, null);
+        }
+        return account;
+    }
+
+    private static byte[] hash(String password, byte[] salt) {
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                    .generateSecret(new PBEKeySpec(password.toCharArray(), salt, ITERATIONS, 256))
+                    .getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Account {
+
+        final Identity identity;
+        final byte[] salt;
+        final byte[] hash;
+
+        Account(Identity identity, byte[] salt, byte[] hash) {
+            this.identity = identity;
+            this.salt = salt;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.fitnessapp;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * Posts held on the heap: a map from {@code id} to each post plus an {@code _id} sorted index for
+ * the feed.
+ *
+ * Stored documents are never modified: a like or comment swaps in an updated copy, so pages can
+ * be serialized while writers carry on. Likes and comments go into append-only lists that share
+ * their backing array between versions, which keeps a like on a post with many likes O(1).
+ */
+class InMemoryPostRepository implements PostRepository {
+
+    private final Map<String, Post> byId = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<ObjectId, Post> feed = new ConcurrentSkipListMap<>();
+
+    @Override
+    public Iterable<Document> page(ObjectId before, int limit) {
+        NavigableMap<ObjectId, Post> newestFirst = before == null
+                ? feed.descendingMap()
+                : feed.headMap(before, false).descendingMap();
+        return () -> newestFirst.values().stream()
+                .limit(limit)
+                .map(post -> post.current)
+                .iterator();
+    }
+
+    @Override
+    public Document find(String id) {
+        Post post = byId.get(id);
+        return post == null ? null : post.current;
+    }
+
+    @Override
+    public List<Document> findAll(List<String> ids) {
+        List<Document> found = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Post post = byId.get(id);
+            if (post != null) {
+                found.add(post.current);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Iterable<Document> scan() {
+        return () -> new Iterator<Document>() {
+            private final Iterator<Post> posts = feed.values().iterator();
+
+            @Override
+            public boolean hasNext() {
+                return posts.hasNext();
+            }
+
+            @Override
+            public Document next() {
+                return posts.next().current;
+            }
+        };
+    }
+
+    /**
+     * Scans the whole feed, as posts are not indexed by author here.
+     */
+    @Override
+    public Iterable<Document> postsBy(String email, int batchSize) {
+        return () -> feed.values().stream()
+                .map(post -> post.current)
+                .filter(post -> email.equals(post.getString("email")))
+                .iterator();
+    }
+
+    @Override
+    public void insert(Document post) {
+        if (!post.containsKey("_id")) {
+            post.put("_id", new ObjectId());
+        }
+        Post stored = new Post(post);
+        // Like the Mongo lookup by id, the first post stored under an id is the one addressed.
+        byId.putIfAbsent(post.getString("id"), stored);
+        feed.put(post.getObjectId("_id"), stored);
+    }
+
+    @Override
+    public Document addLike(String id, String email) {
+        Post post = byId.get(id);
+        if (post == null) {
+            return null;
+        }
+        synchronized (post) {
+            if (!post.likers.add(email)) {
+                return null;
+            }
+            post.likes = post.likes.plus(email);
+            Document updated = new Document(post.current);
+            updated.put("likes", post.likes);
+            updated.put("likeCount", post.likes.size());
+            post.current = updated;
+            return updated;
+        }
+    }
+
+    @Override
+    public Document addComment(String id, Document comment) {
+        Post post = byId.get(id);
+        if (post == null) {
+            return null;
+        }
+        synchronized (post) {
+            post.comments = post.comments.plus(comment);
+            int count = post.comments.size();
+            Document updated = new Document(post.current);
+            updated.put("comments", post.comments.subList(Math.max(0, count - COMMENT_PREVIEW_SIZE), count));
+            updated.put("commentCount", count);
+            post.current = updated;
+            return updated;
+        }
+    }
+
+    @Override
+    public CommentBucket comments(String id, Long beforeBucket) {
+        Post post = byId.get(id);
+        if (post == null) {
+            return null;
+        }
+        AppendOnlyList<Document> comments = post.comments;
+        if (comments.size() == 0) {
+            return null;
+        }
+        long bucket = (comments.size() - 1) / COMMENT_BUCKET_SIZE;
+        if (beforeBucket != null) {
+            bucket = Math.min(bucket, beforeBucket - 1);
+        }
+        if (bucket < 0) {
+            return null;
+        }
+        int start = (int) bucket * COMMENT_BUCKET_SIZE;
+        return new CommentBucket(bucket, comments.subList(start, Math.min(comments.size(), start + COMMENT_BUCKET_SIZE)));
+    }
+
+    private static class Post {
+
+        // Guarded by the Post's monitor; current is also read without it.
+        final Set<String> likers = new HashSet<>();
+        AppendOnlyList<String> likes;
+        volatile AppendOnlyList<Document> comments;
+        volatile Document current;
+
+        Post(Document post) {
+            likes = AppendOnlyList.of(post.getList("likes", String.class, List.of()));
+            likers.addAll(likes);
+            comments = AppendOnlyList.of(post.getList("comments", Document.class, List.of()));
+            current = new Document(post);
+            current.put("likes", likes);
+            current.put("comments", comments.subList(Math.max(0, comments.size() - COMMENT_PREVIEW_SIZE), comments.size()));
+        }
+    }
+
+    /**
+     * An immutable list whose {@link #plus} is amortised O(1): versions share one backing array
+     * and each only reads the prefix it was created with. Only the newest version may be
+     * extended, which the Post monitor guarantees.
+     */
+    private static class AppendOnlyList<T> extends AbstractList<T> {
+
+        private final Object[] elements;
+        private final int size;
+
+        private AppendOnlyList(Object[] elements, int size) {
+            this.elements = elements;
+            this.size = size;
+        }
+
+        static <T> AppendOnlyList<T> of(List<T> elements) {
+            Object[] array = elements.toArray(new Object[Math.max(4, elements.size())]);
+            return new AppendOnlyList<>(array, elements.size());
+        }
+
+        AppendOnlyList<T> plus(T element) {
+            Object[] array = elements;
+            if (size == array.length) {
+                array = Arrays.copyOf(array, size * 2);
+            }
+            array[size] = element;
+            return new AppendOnlyList<>(array, size + 1);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            return (T) elements[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.bson.Document;
+
+/**
+ * Water levels and history held on the heap: one level document per email and, per email, a
+ * day-sorted map of that day's events and totals.
+ */
+class InMemoryWaterRepository implements WaterRepository {
+
+    private final Map<String, Document> levels = new ConcurrentHashMap<>();
+    private final Map<String, NavigableMap<Long, Day>> history = new ConcurrentHashMap<>();
+
+    @Override
+    public int storedLevel(String email) {
+        Document record = levels.get(email);
+        return record != null ? record.getInteger("waterLevel", 0) : 0;
+    }
+
+    @Override
+    public List<Integer> saveLevels(List<LevelChange> changes) {
+        for (LevelChange change : changes) {
+            levels.compute(change.email, (email, stored) -> {
+                Document updated = stored == null ? new Document("email", email) : new Document(stored);
+                if (change.reset) {
+                    updated.put("waterLevel", change.delta);
+                    updated.put("dayStartedAt", new Date(change.resetAt));
+                } else {
+                    updated.put("waterLevel", updated.getInteger("waterLevel", 0) + change.delta);
+                }
+                updated.put("timestamp", change.timestamp);
+                return updated;
+            });
+        }
+        return List.of();
+    }
+
+    @Override
+    public List<DayIntake> appendEvents(List<DayIntake> days) {
+        for (DayIntake intake : days) {
+            Day day = day(intake);
+            synchronized (day) {
+                day.events.addAll(intake.events);
+            }
+        }
+        return List.of();
+    }
+
+    @Override
+    public List<DayIntake> addToTotals(List<DayIntake> days) {
+        for (DayIntake intake : days) {
+            Day day = day(intake);
+            synchronized (day) {
+                day.total += intake.total;
+                day.entries += intake.events.size();
+            }
+        }
+        return List.of();
+    }
+
+    private Day day(DayIntake intake) {
+        return history.computeIfAbsent(intake.email, k -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(intake.day, k -> new Day());
+    }
+
+    @Override
+    public Map<Long, DailyTotal> dailyTotals(String email, long fromDay, long toDay) {
+        Map<Long, DailyTotal> totals = new HashMap<>();
+        NavigableMap<Long, Day> days = history.get(email);
+        if (days != null) {
+            days.subMap(fromDay, true, toDay, true).forEach((key, day) -> {
+                synchronized (day) {
+                    totals.put(key, new DailyTotal(day.total, day.entries));
+                }
+            });
+        }
+        return totals;
+    }
+
+    @Override
+    public Document levelRecord(String email) {
+        return levels.get(email);
+    }
+
+    @Override
+    public Iterable<Document> history(String email, int batchSize) {
+        NavigableMap<Long, Day> days = history.getOrDefault(email, Collections.emptyNavigableMap());
+        return () -> days.entrySet().stream().map(entry -> {
+            Day day = entry.getValue();
+            synchronized (day) {
+                return new Document("email", email)
+                        .append("day", new Date(entry.getKey()))
+                        .append("events", new ArrayList<>(day.events))
+                        .append("count", day.events.size());
+            }
+        }).iterator();
+    }
+
+    private static class Day {
+
+        final List<Document> events = new ArrayList<>();
+        int total;
+        int entries;
+    }
+}
@@ -0,0 +1,150 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * Workouts and their summaries held on the heap. Summaries are indexed twice: per user and
+ * period, sorted by key, for range reads, and per period key for seeding the leaderboard. Each
+ * stored workout remembers the periods it was counted in; one that is not stored is always
+ * counted.
+ */
+class InMemoryWorkoutRepository implements WorkoutRepository {
+
+    private final Map<ObjectId, Stored> workouts = new ConcurrentHashMap<>();
+    private final Map<String, NavigableMap<String, Summary>> byUser = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Summary>> byPeriodKey = new ConcurrentHashMap<>();
+    private final Map<String, Document> streaks = new ConcurrentHashMap<>();
+
+    @Override
+    public void insert(List<Document> batch) {
+        for (Document workout : batch) {
+            workouts.putIfAbsent(workout.getObjectId("_id"), new Stored(workout));
+        }
+    }
+
+    @Override
+    public void addSummaries(Collection<WorkoutSummaries.Totals> totals, Map<String, SortedSet<Long>> activeDays) {
+        for (WorkoutSummaries.Totals t : totals) {
+            Summary summary = byUser.computeIfAbsent(t.email + '\n' + t.period, k -> new ConcurrentSkipListMap<>())
+                    .computeIfAbsent(t.key, k -> new Summary(t.email, t.key));
+            byPeriodKey.computeIfAbsent(t.period + '\n' + t.key, k -> new ConcurrentHashMap<>())
+                    .putIfAbsent(t.email, summary);
+            for (Document workout : t.workouts) {
+                Stored stored = workouts.get(workout.get("i"));
+                if (stored != null && !stored.countIn(t.period)) {
+                    continue;
+                }
+                synchronized (summary) {
+                    summary.calories += workout.get("c", Number.class).doubleValue();
+                    summary.duration += workout.get("d", Number.class).intValue();
+                    summary.count++;
+                }
+            }
+        }
+        activeDays.forEach((email, days) -> streaks.compute(email, (k, stored) -> {
+            long lastDay = stored != null ? stored.getLong("lastDay") : Long.MIN_VALUE;
+            int current = stored != null ? stored.getInteger("current") : 0;
+            int longest = stored != null ? stored.getInteger("longest") : 0;
+            for (long day : days) {
+                if (day > lastDay) {
+                    current = day == lastDay + 1 ? current + 1 : 1;
+                    lastDay = day;
+                }
+                longest = Math.max(longest, current);
+            }
+            return new Document("email", email)
+                    .append("lastDay", lastDay)
+                    .append("current", current)
+                    .append("longest", longest);
+        }));
+    }
+
+    @Override
+    public List<Document> summaries(String email, String period, String fromKey, String toKey) {
+        NavigableMap<String, Summary> summaries = byUser.get(email + '\n' + period);
+        List<Document> found = new ArrayList<>();
+        if (summaries != null && fromKey.compareTo(toKey) <= 0) {
+            for (Summary summary : summaries.subMap(fromKey, true, toKey, true).values()) {
+                found.add(summary.toDocument());
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Iterable<Document> summariesFor(String period, String key) {
+        Map<String, Summary> summaries = byPeriodKey.getOrDefault(period + '\n' + key, Map.of());
+        List<Document> found = new ArrayList<>(summaries.size());
+        for (Summary summary : summaries.values()) {
+            found.add(summary.toDocument());
+        }
+        return found;
+    }
+
+    @Override
+    public Document streak(String email) {
+        return streaks.get(email);
+    }
+
+    /**
+     * Scans every workout, as they are not indexed by user here.
+     */
+    @Override
+    public Iterable<Document> workouts(String email, int batchSize) {
+        return () -> workouts.values().stream()
+                .map(stored -> stored.workout)
+                .filter(workout -> email.equals(workout.getString("email")))
+                .iterator();
+    }
+
+    private static class Stored {
+
+        final Document workout;
+        private final Set<String> countedIn = new HashSet<>(2);
+
+        Stored(Document workout) {
+            this.workout = workout;
+        }
+
+        /**
+         * Returns true the first time only for each period.
+         */
+        synchronized boolean countIn(String period) {
+            return countedIn.add(period);
+        }
+    }
+
+    private static class Summary {
+
+        final String email;
+        final String key;
+        double calories;
+        int duration;
+        int count;
+
+        Summary(String email, String key) {
+            this.email = email;
+            this.key = key;
+        }
+
+        synchronized Document toDocument() {
+            return new Document("email", email)
+                    .append("key", key)
+                    .append("calories", calories)
+                    .append("duration", duration)
+                    .append("count", count);
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package com.fitnessapp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import spark.Response;
+
+/**
+ * The one place JSON is read and written. A single shared {@link Gson} with hand-written adapters
+ * for the response types on hot paths, and helpers that encode a response straight into the
+ * servlet output stream through pooled UTF-8 buffers instead of building it as a String first.
+ *
+ * Documents are written with ObjectIds as hex strings and dates as epoch milliseconds.
+ */
+final class Json {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final BlockingQueue<Utf8Buffer> buffers =
+            new ArrayBlockingQueue<>(Integer.getInteger("json.bufferPoolSize", 64));
+
+    static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Document.class, new DocumentAdapter())
+            .registerTypeAdapter(FoodChartController.FoodItem.class, new FoodItemAdapter().nullSafe())
+            .registerTypeAdapter(BMIController.BMIResult.class, new BMIResultAdapter().nullSafe())
+            .registerTypeAdapter(WaterReminderController.WaterResult.class, new WaterResultAdapter().nullSafe())
+            .create();
+
+    private Json() {
+    }
+
+    interface Body {
+
+        void writeTo(JsonWriter writer) throws IOException;
+    }
+
+    interface LinesBody {
+
+        void writeTo(LineWriter lines) throws IOException;
+    }
+
+    /**
+     * Newline-delimited JSON: write a value to {@link #json}, then end its line.
+     */
+    static final class LineWriter {
+
+        final JsonWriter json;
+        private final Writer out;
+
+        private LineWriter(JsonWriter json, Writer out) {
+            this.json = json;
+            this.out = out;
+        }
+
+        void endLine() throws IOException {
+            out.write('\n');
+        }
+    }
+
+    static <T> T read(String json, Class<T> type) {
+        return GSON.fromJson(json, type);
+    }
+
+    static String toJson(Object value) {
+        return GSON.toJson(value);
+    }
+
+    /**
+     * Writes {@code value} as the response body and returns the (empty) route result.
+     */
+    static String write(Response res, Object value) throws IOException {
+        return stream(res, writer -> {
+            if (value == null) {
+                writer.nullValue();
+            } else {
+                GSON.toJson(value, value.getClass(), writer);
+            }
+        });
+    }
+
+    /**
+     * Lets {@code body} write the response incrementally and returns the (empty) route result.
+     * Status and headers have to be set before calling this. The servlet stream is left open:
+     * Spark still writes the route result to it.
+     */
+    static String stream(Response res, Body body) throws IOException {
+        res.type("application/json");
+        return encode(res, out -> {
+            JsonWriter writer = new JsonWriter(out);
+            // Escapes <, >, &, = and ' like GSON.toJson does.
+            writer.setHtmlSafe(true);
+            body.writeTo(writer);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Like {@link #stream}, for a body of newline-delimited JSON (application/x-ndjson) of any
+     * length: it reaches the client in chunks as the pooled buffer fills.
+     */
+    static String streamLines(Response res, LinesBody body) throws IOException {
+        res.type("application/x-ndjson");
+        return encode(res, out -> {
+            JsonWriter writer = new JsonWriter(out);
+            writer.setHtmlSafe(true);
+            // Allows a top-level value per line.
+            writer.setLenient(true);
+            body.writeTo(new LineWriter(writer, out));
+            writer.flush();
+        });
+    }
+
+    private interface Encoder {
+
+        void writeTo(Writer out) throws IOException;
+    }
+
+    private static String encode(Response res, Encoder encoder) throws IOException {
+        Utf8Buffer buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = new Utf8Buffer();
+        }
+        try {
+            buffer.out = res.raw().getOutputStream();
+            encoder.writeTo(buffer);
+        } finally {
+            buffer.reset();
+            buffers.offer(buffer);
+        }
+        return "";
+    }
+
+    static void writeDocument(JsonWriter writer, Map<String, ?> document) throws IOException {
+        writer.beginObject();
+        for (Map.Entry<String, ?> field : document.entrySet()) {
+            writer.name(field.getKey());
+            writeValue(writer, field.getValue());
+        }
+        writer.endObject();
+    }
+
+    @SuppressWarnings("unchecked")
+    static void writeValue(JsonWriter writer, Object value) throws IOException {
+        if (value == null) {
+            writer.nullValue();
+        } else if (value instanceof String) {
+            writer.value((String) value);
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else if (value instanceof ObjectId) {
+            writer.value(((ObjectId) value).toHexString());
+        } else if (value instanceof Date) {
+            writer.value(((Date) value).getTime());
+        } else if (value instanceof Map) {
+            writeDocument(writer, (Map<String, ?>) value);
+        } else if (value instanceof Iterable) {
+            writer.beginArray();
+            for (Object element : (Iterable<?>) value) {
+                writeValue(writer, element);
+            }
+            writer.endArray();
+        } else {
+            GSON.toJson(value, value.getClass(), writer);
+        }
+    }
+
+    private static class DocumentAdapter extends TypeAdapter<Document> {
+
+        @Override
+        public void write(JsonWriter out, Document document) throws IOException {
+            if (document == null) {
+                out.nullValue();
+            } else {
+                writeDocument(out, document);
+            }
+        }
+
+        @Override
+        public Document read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return readDocument(in);
+        }
+
+        private static Document readDocument(JsonReader in) throws IOException {
+            Document document = new Document();
+            in.beginObject();
+            while (in.hasNext()) {
+                document.append(in.nextName(), readValue(in));
+            }
+            in.endObject();
+            return document;
+        }
+
+        private static Object readValue(JsonReader in) throws IOException {
+            switch (in.peek()) {
+                case BEGIN_OBJECT:
+                    return readDocument(in);
+                case BEGIN_ARRAY:
+                    List<Object> list = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        list.add(readValue(in));
+                    }
+                    in.endArray();
+                    return list;
+                case STRING:
+                    return in.nextString();
+                case NUMBER:
+                    // Whole numbers stay integral so they are stored as int64 rather than double.
+                    String number = in.nextString();
+                    if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+                        try {
+                            return Long.parseLong(number);
+                        } catch (NumberFormatException e) {
+                            // Too large for a long.
+                        }
+                    }
+                    return Double.parseDouble(number);
+                case BOOLEAN:
+                    return in.nextBoolean();
+                case NULL:
+                    in.nextNull();
+                    return null;
+                default:
+                    throw new IllegalStateException("Unexpected " + in.peek() + " at " + in.getPath());
+            }
+        }
+    }
+
+    private static class FoodItemAdapter extends TypeAdapter<FoodChartController.FoodItem> {
+
+        @Override
+        public void write(JsonWriter out, FoodChartController.FoodItem item) throws IOException {
+            out.beginObject();
+            writeString(out, "bmiRange", item.bmiRange);
+            writeString(out, "bmiCategory", item.bmiCategory);
+            writeString(out, "mealType", item.mealType);
+            writeString(out, "foodsList", item.foodsList);
+            writeString(out, "nutritionInfo", item.nutritionInfo);
+            out.name("caloriesPerServing").value(item.caloriesPerServing);
+            out.name("proteinContent").value(item.proteinContent);
+            out.name("monthsToFollow").value(item.monthsToFollow);
+            out.endObject();
+        }
+
+        @Override
+        public FoodChartController.FoodItem read(JsonReader in) throws IOException {
+            String bmiRange = null;
+            String bmiCategory = null;
+            String mealType = null;
+            String foodsList = null;
+            String nutritionInfo = null;
+            int caloriesPerServing = 0;
+            int proteinContent = 0;
+            int monthsToFollow = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "bmiRange":
+                        bmiRange = readString(in);
+                        break;
+                    case "bmiCategory":
+                        bmiCategory = readString(in);
+                        break;
+                    case "mealType":
+                        mealType = readString(in);
+                        break;
+                    case "foodsList":
+                        foodsList = readString(in);
+                        break;
+                    case "nutritionInfo":
+                        nutritionInfo = readString(in);
+                        break;
+                    case "caloriesPerServing":
+                        caloriesPerServing = in.nextInt();
+                        break;
+                    case "proteinContent":
+                        proteinContent = in.nextInt();
+                        break;
+                    case "monthsToFollow":
+                        monthsToFollow = in.nextInt();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new FoodChartController.FoodItem(bmiRange, bmiCategory, mealType, foodsList,
+                    caloriesPerServing, nutritionInfo, proteinContent, monthsToFollow);
+        }
+    }
+
+    private static class BMIResultAdapter extends TypeAdapter<BMIController.BMIResult> {
+
+        private final TypeAdapter<FoodChartController.FoodItem> foodItems = new FoodItemAdapter().nullSafe();
+
+        @Override
+        public void write(JsonWriter out, BMIController.BMIResult result) throws IOException {
+            out.beginObject();
+            out.name("bmi").value(result.bmi);
+            writeString(out, "category", result.category);
+            writeString(out, "recommendation", result.recommendation);
+            if (result.mealPlan != null) {
+                out.name("mealPlan").beginArray();
+                for (FoodChartController.FoodItem item : result.mealPlan) {
+                    foodItems.write(out, item);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public BMIController.BMIResult read(JsonReader in) throws IOException {
+            double bmi = 0;
+            String category = null;
+            String recommendation = null;
+            List<FoodChartController.FoodItem> mealPlan = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "bmi":
+                        bmi = in.nextDouble();
+                        break;
+                    case "category":
+                        category = readString(in);
+                        break;
+                    case "recommendation":
+                        recommendation = readString(in);
+                        break;
+                    case "mealPlan":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            break;
+                        }
+                        mealPlan = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            mealPlan.add(foodItems.read(in));
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            BMIController.BMIResult result = new BMIController.BMIResult(bmi, category, recommendation);
+            result.mealPlan = mealPlan;
+            return result;
+        }
+    }
+
+    private static class WaterResultAdapter extends TypeAdapter<WaterReminderController.WaterResult> {
+
+        @Override
+        public void write(JsonWriter out, WaterReminderController.WaterResult result) throws IOException {
+            out.beginObject().name("waterLevel").value(result.waterLevel).endObject();
+        }
+
+        @Override
+        public WaterReminderController.WaterResult read(JsonReader in) throws IOException {
+            int waterLevel = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("waterLevel")) {
+                    waterLevel = in.nextInt();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new WaterReminderController.WaterResult(waterLevel);
+        }
+    }
+
+    // Like reflective Gson, null fields are left out.
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Writer that encodes UTF-8 into a fixed byte array and hands full arrays to the servlet
+     * stream, so serializing a response allocates no intermediate chars, Strings or byte arrays.
+     */
+    private static class Utf8Buffer extends Writer {
+
+        private final byte[] bytes = new byte[BUFFER_SIZE];
+        private int count;
+        private char highSurrogate;
+        OutputStream out;
+
+        @Override
+        public void write(int c) throws IOException {
+            encode((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                encode(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(String string, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                encode(string.charAt(i));
+            }
+        }
+
+        private void encode(char c) throws IOException {
+            if (count > BUFFER_SIZE - 4) {
+                drain();
+            }
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+                    bytes[count++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                    return;
+                }
+                bytes[count++] = '?';
+                encode(c);
+                return;
+            }
+            if (c < 0x80) {
+                bytes[count++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[count++] = (byte) (0xC0 | (c >> 6));
+                bytes[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                bytes[count++] = '?';
+            } else {
+                bytes[count++] = (byte) (0xE0 | (c >> 12));
+                bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        private void drain() throws IOException {
+            if (count > 0) {
+                out.write(bytes, 0, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                bytes[count++] = '?';
+            }
+            drain();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        void reset() {
+            count = 0;
+            highSurrogate = 0;
+            out = null;
+        }
+    }
+}
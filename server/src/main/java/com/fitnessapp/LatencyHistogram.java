@@ -0,0 +1,77 @@
+package com.fitnessapp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets: values are kept in microseconds
+ * with 16 linear sub-buckets per power of two, so any recorded value is off by at most ~6%.
+ * Recording is a couple of atomic increments and never allocates; percentiles are computed from
+ * a racy but consistent-enough snapshot at read time.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values from 2^37 us (about 38 hours) on are clamped into the last bucket.
+    private static final int MAX_MAGNITUDE = 32;
+    private static final long MAX_VALUE = (2L * SUB_BUCKETS << MAX_MAGNITUDE) - 1;
+    private static final int BUCKETS = (MAX_MAGNITUDE + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    void recordNanos(long nanos) {
+        long micros = Math.min(MAX_VALUE, Math.max(0, nanos / 1_000));
+        counts.incrementAndGet(indexOf(micros));
+        count.increment();
+        sumMicros.add(micros);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    double sumSeconds() {
+        return sumMicros.sum() / 1e6;
+    }
+
+    /**
+     * Returns the values at the given quantiles (0..1, ascending) in seconds, each the upper
+     * edge of the bucket the quantile falls into.
+     */
+    double[] quantileSeconds(double... quantiles) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        double[] values = new double[quantiles.length];
+        if (total == 0) {
+            return values;
+        }
+        int bucket = 0;
+        long seen = snapshot[0];
+        for (int q = 0; q < quantiles.length; q++) {
+            long rank = Math.max(1, (long) Math.ceil(quantiles[q] * total));
+            while (seen < rank && bucket < BUCKETS - 1) {
+                seen += snapshot[++bucket];
+            }
+            values[q] = highestEquivalentValue(bucket) / 1e6;
+        }
+        return values;
+    }
+
+    private static int indexOf(long value) {
+        int magnitude = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return magnitude * SUB_BUCKETS + (int) (value >>> magnitude);
+    }
+
+    private static long highestEquivalentValue(int index) {
+        int magnitude = Math.max(0, index / SUB_BUCKETS - 1);
+        long lowest = (long) (index - magnitude * SUB_BUCKETS) << magnitude;
+        return lowest + (1L << magnitude) - 1;
+    }
+}
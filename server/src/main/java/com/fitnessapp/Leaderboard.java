@@ -0,0 +1,286 @@
+package com.fitnessapp;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import org.bson.Document;
+
+/**
+ * In-memory calorie leaderboard for the current day and the current ISO week.
+ *
+ * Each board keeps per-user totals in an order-statistic treap (ordered by calories, highest
+ * first, then email) so that a user's rank and the top N are O(log n) reads. A board belongs to
+ * one period key; the first update or read after the period ends replaces it with an empty one,
+ * and workouts from an earlier period are ignored.
+ */
+class Leaderboard {
+
+    private final Map<String, Function<LocalDate, String>> keys = Map.of(
+            WorkoutSummaries.DAY, WorkoutSummaries::dayKey,
+            WorkoutSummaries.WEEK, WorkoutSummaries::weekKey);
+    private final Map<String, Board> boards = new HashMap<>();
+
+    Leaderboard() {
+        for (String period : keys.keySet()) {
+            boards.put(period, new Board(currentKey(period)));
+        }
+    }
+
+    static boolean supports(String period) {
+        return WorkoutSummaries.DAY.equals(period) || WorkoutSummaries.WEEK.equals(period);
+    }
+
+    /**
+     * Seeds the board of {@code period} from its stored summaries (documents with email and
+     * calories for the current key).
+     */
+    void load(String period, Iterable<Document> summaries) {
+        Board board = board(period);
+        for (Document summary : summaries) {
+            board.add(summary.getString("email"), summary.get("calories", Number.class).doubleValue());
+        }
+    }
+
+    String currentKey(String period) {
+        return keys.get(period).apply(LocalDate.now(ZoneOffset.UTC));
+    }
+
+    void record(List<Document> workouts) {
+        for (Document workout : workouts) {
+            LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(workout.getLong("timestamp"), WaterIntakeBuffer.DAY_MS));
+            double calories = workout.get("caloriesBurned", Number.class).doubleValue();
+            for (String period : keys.keySet()) {
+                Board board = board(period);
+                if (board.key.equals(keys.get(period).apply(day))) {
+                    board.add(workout.getString("email"), calories);
+                }
+            }
+        }
+    }
+
+    List<Entry> top(String period, int n) {
+        return board(period).top(n);
+    }
+
+    /**
+     * Returns the user's standing, or null when they have no workouts this period.
+     */
+    Entry rank(String period, String email) {
+        return board(period).rank(email);
+    }
+
+    private Board board(String period) {
+        String key = currentKey(period);
+        synchronized (boards) {
+            Board board = boards.get(period);
+            if (!board.key.equals(key)) {
+                board = new Board(key);
+                boards.put(period, board);
+            }
+            return board;
+        }
+    }
+
+    static class Entry {
+
+        final int rank;
+        final String email;
+        final double calories;
+
+        Entry(int rank, String email, double calories) {
+            this.rank = rank;
+            this.email = email;
+            this.calories = calories;
+        }
+    }
+
+    private static class Board {
+
+        final String key;
+        private final Map<String, Double> totals = new HashMap<>();
+        private final RankedTree tree = new RankedTree();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Board(String key) {
+            this.key = key;
+        }
+
+        void add(String email, double calories) {
+            lock.writeLock().lock();
+            try {
+                Double previous = totals.get(email);
+                double total = (previous != null ? previous : 0) + calories;
+                if (previous != null) {
+                    tree.remove(previous, email);
+                }
+                tree.insert(total, email);
+                totals.put(email, total);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        List<Entry> top(int n) {
+            lock.readLock().lock();
+            try {
+                List<Entry> entries = new ArrayList<>(Math.min(n, totals.size()));
+                tree.collect(n, entries);
+                return entries;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        Entry rank(String email) {
+            lock.readLock().lock();
+            try {
+                Double total = totals.get(email);
+                return total == null ? null : new Entry(tree.countBefore(total, email) + 1, email, total);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Treap whose nodes know their subtree size, ordered by score descending then email.
+     */
+    private static class RankedTree {
+
+        private Node root;
+
+        void insert(double score, String email) {
+            root = insert(root, new Node(score, email));
+        }
+
+        void remove(double score, String email) {
+            root = remove(root, score, email);
+        }
+
+        int countBefore(double score, String email) {
+            int count = 0;
+            Node node = root;
+            while (node != null) {
+                int c = compare(score, email, node);
+                if (c <= 0) {
+                    node = node.left;
+                } else {
+                    count += size(node.left) + 1;
+                    node = node.right;
+                }
+            }
+            return count;
+        }
+
+        void collect(int n, List<Entry> out) {
+            // Iterative in-order walk that stops after n nodes.
+            List<Node> stack = new ArrayList<>();
+            Node node = root;
+            while ((node != null || !stack.isEmpty()) && out.size() < n) {
+                while (node != null) {
+                    stack.add(node);
+                    node = node.left;
+                }
+                node = stack.remove(stack.size() - 1);
+                out.add(new Entry(out.size() + 1, node.email, node.score));
+                node = node.right;
+            }
+        }
+
+        private static Node insert(Node node, Node added) {
+            if (node == null) {
+                return added;
+            }
+            if (compare(added.score, added.email, node) < 0) {
+                node.left = insert(node.left, added);
+                if (node.left.priority > node.priority) {
+                    node = rotateRight(node);
+                }
+            } else {
+                node.right = insert(node.right, added);
+                if (node.right.priority > node.priority) {
+                    node = rotateLeft(node);
+                }
+            }
+            node.update();
+            return node;
+        }
+
+        private static Node remove(Node node, double score, String email) {
+            if (node == null) {
+                return null;
+            }
+            int c = compare(score, email, node);
+            if (c < 0) {
+                node.left = remove(node.left, score, email);
+            } else if (c > 0) {
+                node.right = remove(node.right, score, email);
+            } else if (node.left == null) {
+                return node.right;
+            } else if (node.right == null) {
+                return node.left;
+            } else if (node.left.priority > node.right.priority) {
+                node = rotateRight(node);
+                node.right = remove(node.right, score, email);
+            } else {
+                node = rotateLeft(node);
+                node.left = remove(node.left, score, email);
+            }
+            node.update();
+            return node;
+        }
+
+        private static Node rotateRight(Node node) {
+            Node left = node.left;
+            node.left = left.right;
+            left.right = node;
+            node.update();
+            left.update();
+            return left;
+        }
+
+        private static Node rotateLeft(Node node) {
+            Node right = node.right;
+            node.right = right.left;
+            right.left = node;
+            node.update();
+            right.update();
+            return right;
+        }
+
+        private static int compare(double score, String email, Node node) {
+            int c = Double.compare(node.score, score);
+            return c != 0 ? c : email.compareTo(node.email);
+        }
+
+        private static int size(Node node) {
+            return node == null ? 0 : node.size;
+        }
+
+        private static class Node {
+
+            final double score;
+            final String email;
+            final int priority = ThreadLocalRandom.current().nextInt();
+            int size = 1;
+            Node left;
+            Node right;
+
+            Node(double score, String email) {
+                this.score = score;
+                this.email = email;
+            }
+
+            void update() {
+                size = 1 + RankedTree.size(left) + RankedTree.size(right);
+            }
+        }
+    }
+}
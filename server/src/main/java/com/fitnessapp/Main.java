@@ -6,35 +6,62 @@ import java.io.IOException;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
-import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoClients;
-import com.mongodb.client.MongoDatabase;
+import com.google.firebase.auth.FirebaseAuth;
 
+import static spark.Spark.awaitInitialization;
 import static spark.Spark.ipAddress;
 import static spark.Spark.port;
 
 public class Main {
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) {
+        Startup.phase("main");
         ipAddress("0.0.0.0");
-        port(8080);
+        port(Integer.getInteger("server.port", 8080));
+        String threads = RequestExecution.configure();
+        App.initLive();
+        Metrics.init();
+        Startup.init();
 
-        FileInputStream serviceAccount = new FileInputStream("src/main/resources/google-services.json");
-        FirebaseOptions options = new FirebaseOptions.Builder()
-                .setCredentials(GoogleCredentials.fromStream(serviceAccount))
-                .build();
-        FirebaseApp.initializeApp(options);
+        // -Dstorage=memory runs the whole server without MongoDB or Firebase.
+        Storage storage = Storage.fromConfig();
+        String identityProvider = System.getProperty("auth.provider", storage.backend.equals("memory") ? "memory" : "firebase");
+        IdentityProvider identities;
+        if (identityProvider.equals("memory")) {
+            identities = new InMemoryIdentityProvider();
+        } else {
+            identities = new FirebaseIdentityProvider(Startup.lazy("firebase", Main::initFirebase),
+                    System.getProperty("firebase.apiKey", System.getenv("FITSYNC_FIREBASE_API_KEY")));
+        }
+        System.out.println("Using " + storage.backend + " storage and " + identityProvider + " accounts, "
+                + threads + " request threads.");
 
-        MongoClient mongoClient = MongoClients.create("mongodb://localhost:27017/");
-        MongoDatabase database = mongoClient.getDatabase("fitnessApp");
+        AuthController.init(new CachingIdentityProvider(identities,
+                Integer.getInteger("auth.cacheSize", 10_000),
+                Long.getLong("auth.cacheTtlMs", 300_000L)));
+        // After authentication, so that callers are limited by uid rather than address.
+        RateLimiter.init();
+        BMIController.init(storage.bmi);
 
-        AuthController.init();
-        BMIController.init(database);
+        WaterReminderController.init(storage.water);
+        FoodChartController.init(storage.foodChart);
+        WorkoutController.init(storage.workouts);
 
-        WaterReminderController.init(database);
-        FoodChartController.init(database);
-        WorkoutController.init(database);
+        App.init(storage.posts);
+        ExportController.init(storage.bmi, storage.water, storage.workouts, storage.posts);
 
-        App.init(database);
+        // Storage, indexes and caches come up in parallel while the server already listens.
+        Startup.launch();
+        awaitInitialization();
+        Startup.phase("listening");
+    }
+
+    private static FirebaseAuth initFirebase() throws IOException {
+        try (FileInputStream serviceAccount = new FileInputStream("src/main/resources/google-services.json")) {
+            FirebaseApp.initializeApp(new FirebaseOptions.Builder()
+                    .setCredentials(GoogleCredentials.fromStream(serviceAccount))
+                    .build());
+        }
+        return FirebaseAuth.getInstance();
     }
 }
@@ -0,0 +1,365 @@
+package com.fitnessapp;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.OperatingSystemMXBean;
+
+import spark.Request;
+import spark.Response;
+import static spark.Spark.afterAfter;
+import static spark.Spark.before;
+import static spark.Spark.get;
+
+/**
+ * Process-wide instrumentation, served at GET /metrics in the Prometheus text format: latency,
+ * status codes and in-flight requests per route, MongoDB command latency per collection and
+ * operation, and JVM memory, GC and allocation figures.
+ *
+ * Recording only touches atomics, so it stays on in production; all the formatting work happens
+ * when the endpoint is scraped.
+ */
+class Metrics {
+
+    private static final String TIMING_ATTRIBUTE = "metrics.timing";
+    // Caps label cardinality when clients probe arbitrary paths.
+    private static final int MAX_ROUTES = 200;
+    private static final String OTHER_ROUTE = "other";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private static final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private static final Map<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+    private static final Map<String, Sampled> sampled = new ConcurrentHashMap<>();
+    private static final AtomicLong allocatedBytes = new AtomicLong();
+    // Moving average of MongoDB command latency, which the admission control in RateLimiter reads.
+    private static volatile long mongoLatencyNanos;
+    private static long youngUsedAfterLastGc;
+
+    /**
+     * Installs the timing filters and the /metrics route. Call before any other filter so that
+     * requests rejected by those filters are counted too.
+     */
+    static void init() {
+        before(Metrics::start);
+        afterAfter(Metrics::finish);
+        get("/metrics", Metrics::render);
+        trackAllocations();
+    }
+
+    /**
+     * Adds a gauge read when /metrics is scraped; {@code value} must be cheap and thread-safe.
+     */
+    static void gauge(String name, String help, LongSupplier value) {
+        sampled.put(name, new Sampled("gauge", help, value));
+    }
+
+    /**
+     * Like {@link #gauge}, for a value that only grows.
+     */
+    static void counter(String name, String help, LongSupplier value) {
+        sampled.put(name, new Sampled("counter", help, value));
+    }
+
+    /**
+     * Exponentially weighted average of recent MongoDB command latency; 0 before any command.
+     * getMore is left out, since a change stream legitimately waits in it.
+     */
+    static long mongoLatencyNanos() {
+        return mongoLatencyNanos;
+    }
+
+    static CommandListener mongoListener() {
+        return new MongoCommandTimer();
+    }
+
+    private static void start(Request req, Response res) {
+        RouteMetrics route = routeFor(req.requestMethod(), req.pathInfo());
+        route.inFlight.increment();
+        req.attribute(TIMING_ATTRIBUTE, new Timing(route, System.nanoTime()));
+    }
+
+    private static void finish(Request req, Response res) {
+        Timing timing = req.attribute(TIMING_ATTRIBUTE);
+        if (timing == null) {
+            return;
+        }
+        timing.route.latency.recordNanos(System.nanoTime() - timing.startNanos);
+        timing.route.inFlight.decrement();
+        int status = res.status();
+        if (status >= 0 && status < RouteMetrics.STATUS_CODES) {
+            timing.route.statuses.incrementAndGet(status);
+        }
+    }
+
+    private static RouteMetrics routeFor(String method, String path) {
+        String name = method + " " + normalize(path);
+        RouteMetrics route = routes.get(name);
+        if (route == null) {
+            if (routes.size() >= MAX_ROUTES) {
+                name = OTHER_ROUTE;
+            }
+            route = routes.computeIfAbsent(name, k -> new RouteMetrics());
+        }
+        return route;
+    }
+
+    /**
+     * Every parameterised route has the shape /resource/:id/action, so the middle segment of a
+     * three segment path is replaced by ":id".
+     */
+    static String normalize(String path) {
+        int first = path.indexOf('/', 1);
+        if (first < 0) {
+            return path;
+        }
+        int second = path.indexOf('/', first + 1);
+        if (second < 0 || path.indexOf('/', second + 1) >= 0) {
+            return path;
+        }
+        return path.substring(0, first) + "/:id" + path.substring(second);
+    }
+
+    /**
+     * Counts bytes allocated in the young generation, measured at each collection as the growth
+     * of the eden space since the previous one. Collectors without an eden space (ZGC,
+     * Shenandoah) are not covered.
+     */
+    private static void trackAllocations() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener(Metrics::onCollection, null, null);
+            }
+        }
+    }
+
+    private static void onCollection(Notification notification, Object handback) {
+        if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        long before = 0;
+        long after = 0;
+        for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+            if (pool.getKey().contains("Eden")) {
+                before += pool.getValue().getUsed();
+                after += info.getGcInfo().getMemoryUsageAfterGc().get(pool.getKey()).getUsed();
+            }
+        }
+        synchronized (Metrics.class) {
+            allocatedBytes.addAndGet(Math.max(0, before - youngUsedAfterLastGc));
+            youngUsedAfterLastGc = after;
+        }
+    }
+
+    private static Object render(Request req, Response res) {
+        StringBuilder out = new StringBuilder(16 * 1024);
+
+        Map<String, RouteMetrics> sortedRoutes = new TreeMap<>(routes);
+        header(out, "fitsync_http_request_duration_seconds", "summary", "HTTP request latency by route.");
+        sortedRoutes.forEach((route, metrics) -> summary(out, "fitsync_http_request_duration_seconds",
+                "route=\"" + escape(route) + "\"", metrics.latency));
+        header(out, "fitsync_http_responses_total", "counter", "HTTP responses by route and status code.");
+        sortedRoutes.forEach((route, metrics) -> {
+            for (int status = 0; status < RouteMetrics.STATUS_CODES; status++) {
+                long count = metrics.statuses.get(status);
+                if (count > 0) {
+                    sample(out, "fitsync_http_responses_total",
+                            "route=\"" + escape(route) + "\",status=\"" + status + "\"", count);
+                }
+            }
+        });
+        header(out, "fitsync_http_requests_in_flight", "gauge", "HTTP requests currently being served.");
+        sortedRoutes.forEach((route, metrics) -> sample(out, "fitsync_http_requests_in_flight",
+                "route=\"" + escape(route) + "\"", metrics.inFlight.sum()));
+
+        Map<String, CommandMetrics> sortedCommands = new TreeMap<>(commands);
+        header(out, "fitsync_mongo_command_duration_seconds", "summary", "MongoDB command latency by collection and operation.");
+        sortedCommands.values().forEach(command -> summary(out, "fitsync_mongo_command_duration_seconds",
+                command.labels, command.latency));
+        header(out, "fitsync_mongo_command_failures_total", "counter", "Failed MongoDB commands by collection and operation.");
+        sortedCommands.values().forEach(command -> sample(out, "fitsync_mongo_command_failures_total",
+                command.labels, command.failures.sum()));
+        header(out, "fitsync_mongo_command_latency_average_seconds", "gauge", "Moving average of MongoDB command latency.");
+        sample(out, "fitsync_mongo_command_latency_average_seconds", null, mongoLatencyNanos / 1e9);
+
+        new TreeMap<>(sampled).forEach((name, metric) -> {
+            header(out, name, metric.type, metric.help);
+            sample(out, name, null, metric.value.getAsLong());
+        });
+
+        header(out, "process_cpu_seconds_total", "counter", "CPU time used by the process.");
+        sample(out, "process_cpu_seconds_total", null,
+                ((OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime() / 1e9);
+        header(out, "jvm_gc_collections_total", "counter", "Garbage collections by collector.");
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "jvm_gc_collections_total", "gc=\"" + escape(collector.getName()) + "\"", collector.getCollectionCount());
+        }
+        header(out, "jvm_gc_collection_seconds_total", "counter", "Time spent in garbage collection by collector.");
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "jvm_gc_collection_seconds_total", "gc=\"" + escape(collector.getName()) + "\"",
+                    collector.getCollectionTime() / 1e3);
+        }
+        header(out, "jvm_allocated_bytes_total", "counter", "Bytes allocated in the young generation, updated at each collection.");
+        sample(out, "jvm_allocated_bytes_total", null, allocatedBytes.get());
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        header(out, "jvm_memory_heap_bytes", "gauge", "Heap memory.");
+        sample(out, "jvm_memory_heap_bytes", "area=\"used\"", heap.getUsed());
+        sample(out, "jvm_memory_heap_bytes", "area=\"committed\"", heap.getCommitted());
+        sample(out, "jvm_memory_heap_bytes", "area=\"max\"", heap.getMax());
+        header(out, "jvm_threads", "gauge", "Live threads.");
+        sample(out, "jvm_threads", null, ManagementFactory.getThreadMXBean().getThreadCount());
+
+        res.type("text/plain; version=0.0.4; charset=utf-8");
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        double[] values = histogram.quantileSeconds(QUANTILES);
+        for (int i = 0; i < QUANTILES.length; i++) {
+            sample(out, name, labels + ",quantile=\"" + QUANTILES[i] + "\"", values[i]);
+        }
+        sample(out, name + "_sum", labels, histogram.sumSeconds());
+        sample(out, name + "_count", labels, histogram.count());
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static class RouteMetrics {
+
+        static final int STATUS_CODES = 600;
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLongArray statuses = new AtomicLongArray(STATUS_CODES);
+        final LongAdder inFlight = new LongAdder();
+    }
+
+    private static class CommandMetrics {
+
+        final String labels;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder failures = new LongAdder();
+
+        final boolean averaged;
+
+        CommandMetrics(String collection, String operation) {
+            this.averaged = !operation.equals("getMore");
+            this.labels = "collection=\"" + escape(collection) + "\",operation=\"" + escape(operation) + "\"";
+        }
+    }
+
+    private static class Sampled {
+
+        final String type;
+        final String help;
+        final LongSupplier value;
+
+        Sampled(String type, String help, LongSupplier value) {
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    private static class Timing {
+
+        final RouteMetrics route;
+        final long startNanos;
+
+        Timing(RouteMetrics route, long startNanos) {
+            this.route = route;
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * Times each command from its started to its succeeded or failed event. Request ids are
+     * unique across the client, so they pair the events up.
+     */
+    private static class MongoCommandTimer implements CommandListener {
+
+        private final Map<Integer, CommandMetrics> running = new ConcurrentHashMap<>();
+
+        @Override
+        public void commandStarted(CommandStartedEvent event) {
+            String operation = event.getCommandName();
+            String collection = collectionOf(operation, event.getCommand());
+            running.put(event.getRequestId(), commands.computeIfAbsent(collection + '\n' + operation,
+                    k -> new CommandMetrics(collection, operation)));
+        }
+
+        @Override
+        public void commandSucceeded(CommandSucceededEvent event) {
+            CommandMetrics command = running.remove(event.getRequestId());
+            if (command != null) {
+                record(command, event.getElapsedTime(TimeUnit.NANOSECONDS));
+            }
+        }
+
+        @Override
+        public void commandFailed(CommandFailedEvent event) {
+            CommandMetrics command = running.remove(event.getRequestId());
+            if (command != null) {
+                record(command, event.getElapsedTime(TimeUnit.NANOSECONDS));
+                command.failures.increment();
+            }
+        }
+
+        private static void record(CommandMetrics command, long nanos) {
+            command.latency.recordNanos(nanos);
+            if (command.averaged) {
+                // Racy on purpose: a lost update only makes the average a little less smooth.
+                long average = mongoLatencyNanos;
+                mongoLatencyNanos = average + (nanos - average) / 16;
+            }
+        }
+
+        private static String collectionOf(String operation, BsonDocument command) {
+            // The collection is the value of the command's own key, except for getMore.
+            BsonValue target = command.get(operation.equals("getMore") ? "collection" : operation);
+            return target != null && target.isString() ? target.asString().getValue() : "";
+        }
+    }
+}
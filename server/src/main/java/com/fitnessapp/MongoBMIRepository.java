@@ -0,0 +1,138 @@
+package com.fitnessapp;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * Records in the BMI collection; history is a $group aggregation on the formatted timestamp.
+ */
+class MongoBMIRepository implements BMIRepository {
+
+    private static final int MIGRATION_BATCH_SIZE = 500;
+    // $dateToString formats per history bucket; %G-W%V is the ISO week.
+    private static final Map<String, String> BUCKET_FORMATS = Map.of(
+            "day", "%Y-%m-%d",
+            "week", "%G-W%V",
+            "month", "%Y-%m");
+
+    private final MongoCollection<Document> records;
+
+    MongoBMIRepository(MongoDatabase database) {
+        records = database.getCollection("BMI");
+        // Covers the history aggregation: match on user and time, read bmi from the index.
+        records.createIndex(Indexes.ascending("user", "timestamp", "bmi"));
+        startTimestampMigration();
+    }
+
+    @Override
+    public void insert(Document record) {
+        records.insertOne(record);
+    }
+
+    @Override
+    public Map<Integer, String> insertAll(List<Document> batch) {
+        try {
+            records.insertMany(batch, new InsertManyOptions().ordered(false));
+            return Map.of();
+        } catch (MongoBulkWriteException e) {
+            if (e.getWriteErrors().isEmpty()) {
+                throw e;
+            }
+            // Unordered: everything not reported as failed was stored.
+            Map<Integer, String> failed = new TreeMap<>();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                failed.put(error.getIndex(), error.getMessage());
+            }
+            return failed;
+        }
+    }
+
+    @Override
+    public Iterable<Document> records(String user, int batchSize) {
+        return records.find(Filters.eq("user", user)).sort(Sorts.ascending("timestamp")).batchSize(batchSize);
+    }
+
+    @Override
+    public List<Document> history(String user, Date from, Date to, String bucket) {
+        List<Bson> pipeline = List.of(
+                Aggregates.match(Filters.and(
+                        Filters.eq("user", user),
+                        Filters.gte("timestamp", from),
+                        Filters.lt("timestamp", to))),
+                Aggregates.project(Projections.fields(Projections.excludeId(), Projections.include("timestamp", "bmi"))),
+                Aggregates.group(new Document("$dateToString", new Document("format", BUCKET_FORMATS.get(bucket)).append("date", "$timestamp")),
+                        Accumulators.avg("average", "$bmi"),
+                        Accumulators.min("min", "$bmi"),
+                        Accumulators.max("max", "$bmi"),
+                        Accumulators.sum("count", 1)),
+                Aggregates.sort(Sorts.ascending("_id")));
+        return records.aggregate(pipeline).into(new ArrayList<>());
+    }
+
+    /**
+     * Converts records written with string timestamps (LocalDateTime.toString() in the server's
+     * zone) to BSON dates, a batch at a time, on a background thread.
+     */
+    private void startTimestampMigration() {
+        Thread migration = new Thread(() -> {
+            int converted = 0;
+            try {
+                while (true) {
+                    List<WriteModel<Document>> updates = new ArrayList<>();
+                    for (Document record : records.find(Filters.type("timestamp", BsonType.STRING))
+                            .projection(Projections.include("timestamp"))
+                            .limit(MIGRATION_BATCH_SIZE)) {
+                        Date timestamp;
+                        try {
+                            timestamp = Date.from(LocalDateTime.parse(record.getString("timestamp"))
+                                    .atZone(ZoneId.systemDefault()).toInstant());
+                        } catch (DateTimeParseException e) {
+                            // Unreadable; park it at the epoch so the migration still terminates.
+                            timestamp = new Date(0);
+                        }
+                        updates.add(new UpdateOneModel<>(Filters.eq("_id", record.get("_id")), Updates.set("timestamp", timestamp)));
+                    }
+                    if (updates.isEmpty()) {
+                        break;
+                    }
+                    records.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+                    converted += updates.size();
+                }
+            } catch (MongoException e) {
+                System.out.println("BMI timestamp migration stopped: " + e.getMessage());
+            }
+            if (converted > 0) {
+                System.out.println("Converted " + converted + " BMI timestamps to dates.");
+            }
+        }, "bmi-timestamp-migration");
+        migration.setDaemon(true);
+        migration.start();
+    }
+}
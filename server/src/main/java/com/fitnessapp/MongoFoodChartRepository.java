@@ -0,0 +1,87 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+
+/**
+ * The chart in the foodchart collection, watched with a change stream where the deployment
+ * supports one and by polling otherwise.
+ */
+class MongoFoodChartRepository implements FoodChartRepository {
+
+    // How often the watcher re-checks the collection when change streams are unavailable
+    // (a standalone mongod, as used for local development, does not support them).
+    private static final long POLL_INTERVAL_MS = Long.getLong("foodchart.pollIntervalMs", 30_000L);
+
+    private final MongoDatabase database;
+    private final MongoCollection<Document> collection;
+
+    MongoFoodChartRepository(MongoDatabase database) {
+        this.database = database;
+        this.collection = database.getCollection("foodchart");
+    }
+
+    @Override
+    public List<Document> rows() {
+        return collection.find().into(new ArrayList<>());
+    }
+
+    @Override
+    public void watch(Runnable onChange) {
+        try (MongoCursor<ChangeStreamDocument<Document>> changes = collection.watch().iterator()) {
+            onChange.run();
+            while (changes.hasNext()) {
+                changes.next();
+                // Coalesce a burst of changes (e.g. a re-import) into a single rebuild.
+                while (changes.tryNext() != null) {
+                    // drain
+                }
+                onChange.run();
+            }
+        } catch (MongoException e) {
+            System.out.println("Food chart change stream unavailable (" + e.getMessage()
+                    + "), polling every " + POLL_INTERVAL_MS + " ms instead.");
+        }
+        poll(onChange);
+    }
+
+    private void poll(Runnable onChange) {
+        String lastHash = collectionHash();
+        onChange.run();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+                String hash = collectionHash();
+                // Without dbHash support we can only tell by rebuilding, and the caller keeps
+                // its old state when the content turns out to be unchanged.
+                if (hash == null || !hash.equals(lastHash)) {
+                    onChange.run();
+                    lastHash = hash;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (MongoException e) {
+                System.out.println("Food chart poll failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private String collectionHash() {
+        try {
+            Document result = database.runCommand(new Document("dbHash", 1)
+                    .append("collections", List.of("foodchart")));
+            Document collections = result.get("collections", Document.class);
+            return collections != null ? collections.getString("foodchart") : null;
+        } catch (MongoException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.PushOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+
+/**
+ * Posts in the posts collection; comment buckets in postComments, one document per bucket.
+ */
+class MongoPostRepository implements PostRepository {
+
+    // Likes and comments answer with the counters only, never the likes array.
+    private static final FindOneAndUpdateOptions RETURN_LIKE_COUNTERS = new FindOneAndUpdateOptions()
+            .returnDocument(ReturnDocument.AFTER)
+            .projection(Projections.include("id", "likeCount", "commentCount"));
+    private static final FindOneAndUpdateOptions RETURN_COMMENT_COUNTERS = new FindOneAndUpdateOptions()
+            .returnDocument(ReturnDocument.AFTER)
+            .projection(Projections.include("id", "likeCount", "commentCount", "comments"));
+    private static final FindOneAndUpdateOptions RETURN_COMMENT_NUMBER = new FindOneAndUpdateOptions()
+            .returnDocument(ReturnDocument.AFTER)
+            .projection(Projections.include("commentSeq"));
+
+    private final MongoCollection<Document> posts;
+    private final MongoCollection<Document> commentBuckets;
+
+    MongoPostRepository(MongoDatabase database) {
+        posts = database.getCollection("posts");
+
+        if (!database.listCollectionNames().into(new ArrayList<>()).contains("posts")) {
+            database.createCollection("posts");
+            System.out.println("Collection 'posts' created.");
+        }
+        posts.createIndex(Indexes.ascending("id"));
+        posts.createIndex(Indexes.ascending("email", "_id"));
+        backfillCounts();
+
+        commentBuckets = database.getCollection("postComments");
+        commentBuckets.createIndex(Indexes.ascending("postId", "bucket"), new IndexOptions().unique(true));
+        // Must finish before posts are served: a capped preview push on a post that still embeds
+        // all its comments would drop them.
+        migrateEmbeddedComments();
+    }
+
+    @Override
+    public Iterable<Document> page(ObjectId before, int limit) {
+        Bson filter = before == null ? new Document() : Filters.lt("_id", before);
+        return posts.find(filter)
+                .sort(Sorts.descending("_id"))
+                .limit(limit)
+                .batchSize(limit);
+    }
+
+    @Override
+    public Document find(String id) {
+        return posts.find(Filters.eq("id", id)).first();
+    }
+
+    @Override
+    public List<Document> findAll(List<String> ids) {
+        Map<String, Document> byId = new HashMap<>();
+        for (Document post : posts.find(Filters.in("id", ids))) {
+            byId.putIfAbsent(post.getString("id"), post);
+        }
+        List<Document> found = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Document post = byId.get(id);
+            if (post != null) {
+                found.add(post);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Iterable<Document> scan() {
+        return posts.find()
+                .projection(Projections.include("id", "text", "email"))
+                .sort(Sorts.ascending("_id"))
+                .batchSize(10_000);
+    }
+
+    @Override
+    public Iterable<Document> postsBy(String email, int batchSize) {
+        return posts.find(Filters.eq("email", email)).sort(Sorts.ascending("_id")).batchSize(batchSize);
+    }
+
+    @Override
+    public void insert(Document post) {
+        posts.insertOne(post);
+    }
+
+    @Override
+    public Document addLike(String id, String email) {
+        // Only matches when the like is new, so concurrent likes never double count.
+        return posts.findOneAndUpdate(
+                Filters.and(Filters.eq("id", id), Filters.ne("likes", email)),
+                Updates.combine(Updates.addToSet("likes", email), Updates.inc("likeCount", 1)),
+                RETURN_LIKE_COUNTERS);
+    }
+
+    @Override
+    public Document addComment(String id, Document comment) {
+        // Numbering the comment picks its bucket. The bucket is written before the post's preview
+        // and count, so every comment the post shows can be paged to; a failed bucket write only
+        // leaves a gap in the numbering.
+        Document numbered = posts.findOneAndUpdate(Filters.eq("id", id), Updates.inc("commentSeq", 1L), RETURN_COMMENT_NUMBER);
+        if (numbered == null) {
+            return null;
+        }
+        long number = ((Number) numbered.get("commentSeq")).longValue();
+        commentBuckets.updateOne(
+                Filters.and(Filters.eq("postId", id), Filters.eq("bucket", (number - 1) / COMMENT_BUCKET_SIZE)),
+                Updates.combine(Updates.push("comments", comment), Updates.inc("count", 1)),
+                new UpdateOptions().upsert(true));
+
+        return posts.findOneAndUpdate(
+                Filters.eq("id", id),
+                Updates.combine(
+                        Updates.pushEach("comments", List.of(comment), new PushOptions().slice(-COMMENT_PREVIEW_SIZE)),
+                        Updates.inc("commentCount", 1)),
+                RETURN_COMMENT_COUNTERS);
+    }
+
+    @Override
+    public CommentBucket comments(String id, Long beforeBucket) {
+        Bson filter = Filters.eq("postId", id);
+        if (beforeBucket != null) {
+            filter = Filters.and(filter, Filters.lt("bucket", beforeBucket));
+        }
+        Document bucket = commentBuckets.find(filter).sort(Sorts.descending("bucket")).first();
+        if (bucket == null) {
+            return null;
+        }
+        return new CommentBucket(((Number) bucket.get("bucket")).longValue(),
+                bucket.getList("comments", Document.class, List.of()));
+    }
+
+    /**
+     * One-shot move of comments embedded in posts into postComments buckets. Posts are marked
+     * once moved, so this only does work the first time it runs against older data.
+     */
+    private void migrateEmbeddedComments() {
+        int migrated = 0;
+        for (Document post : posts.find(Filters.exists("commentsBucketed", false))) {
+            String id = post.getString("id");
+            List<Document> comments = post.getList("comments", Document.class, List.of());
+
+            for (int start = 0, bucket = 0; start < comments.size(); start += COMMENT_BUCKET_SIZE, bucket++) {
+                List<Document> chunk = comments.subList(start, Math.min(comments.size(), start + COMMENT_BUCKET_SIZE));
+                commentBuckets.updateOne(
+                        Filters.and(Filters.eq("postId", id), Filters.eq("bucket", (long) bucket)),
+                        Updates.combine(Updates.set("comments", chunk), Updates.set("count", chunk.size())),
+                        new UpdateOptions().upsert(true));
+            }
+
+            posts.updateOne(Filters.eq("_id", post.get("_id")), Updates.combine(
+                    Updates.set("comments", comments.subList(Math.max(0, comments.size() - COMMENT_PREVIEW_SIZE), comments.size())),
+                    Updates.set("commentCount", comments.size()),
+                    Updates.set("commentsBucketed", true)));
+            migrated++;
+        }
+        if (migrated > 0) {
+            System.out.println("Moved embedded comments of " + migrated + " posts into postComments.");
+        }
+    }
+
+    /**
+     * Seeds likeCount/commentCount, and the commentSeq that numbers new comments, on posts written
+     * before they existed; a no-op once every post has them.
+     */
+    private void backfillCounts() {
+        posts.updateMany(Filters.exists("likeCount", false), List.of(new Document("$set",
+                new Document("likeCount", new Document("$size", new Document("$ifNull", List.of("$likes", List.of())))))));
+        posts.updateMany(Filters.exists("commentCount", false), List.of(new Document("$set",
+                new Document("commentCount", new Document("$size", new Document("$ifNull", List.of("$comments", List.of())))))));
+        posts.updateMany(Filters.exists("commentSeq", false), List.of(new Document("$set",
+                new Document("commentSeq", "$commentCount"))));
+    }
+}
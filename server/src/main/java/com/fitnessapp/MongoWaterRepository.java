@@ -0,0 +1,165 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * Levels in waterIntakes, one document per email. Events go into waterIntakeDays bucket
+ * documents of at most {@link #MAX_BUCKET_EVENTS} (minute of day, amount) pairs per user and
+ * day, and each day's running total is kept in waterDailyTotals so history reads never touch the
+ * events.
+ */
+class MongoWaterRepository implements WaterRepository {
+
+    static final int MAX_BUCKET_EVENTS = 200;
+    private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    private final MongoCollection<Document> levels;
+    private final MongoCollection<Document> dayBuckets;
+    private final MongoCollection<Document> dailyTotals;
+
+    MongoWaterRepository(MongoDatabase database) {
+        levels = database.getCollection("waterIntakes");
+        levels.createIndex(Indexes.ascending("email"));
+        dayBuckets = database.getCollection("waterIntakeDays");
+        dayBuckets.createIndex(Indexes.ascending("email", "day"));
+        dailyTotals = database.getCollection("waterDailyTotals");
+        dailyTotals.createIndex(Indexes.ascending("email", "day"), new IndexOptions().unique(true));
+    }
+
+    @Override
+    public int storedLevel(String email) {
+        Document record = levels.find(Filters.eq("email", email)).first();
+        return record != null ? record.getInteger("waterLevel", 0) : 0;
+    }
+
+    @Override
+    public List<Integer> saveLevels(List<LevelChange> changes) {
+        List<WriteModel<Document>> writes = new ArrayList<>(changes.size());
+        for (LevelChange change : changes) {
+            Bson level = change.reset
+                    ? Updates.combine(Updates.set("waterLevel", change.delta), Updates.set("dayStartedAt", new Date(change.resetAt)))
+                    : Updates.inc("waterLevel", change.delta);
+            writes.add(new UpdateOneModel<>(Filters.eq("email", change.email),
+                    Updates.combine(level, Updates.set("timestamp", change.timestamp)), UPSERT));
+        }
+        try {
+            levels.bulkWrite(writes, UNORDERED);
+            return List.of();
+        } catch (MongoBulkWriteException e) {
+            // Unordered: everything not reported as failed was applied.
+            List<Integer> failed = new ArrayList<>();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                failed.add(error.getIndex());
+            }
+            return failed;
+        }
+    }
+
+    @Override
+    public List<DayIntake> appendEvents(List<DayIntake> days) {
+        List<DayIntake> chunks = new ArrayList<>(days.size());
+        for (DayIntake day : days) {
+            for (int start = 0; start < day.events.size(); start += MAX_BUCKET_EVENTS) {
+                chunks.add(slice(day, start, Math.min(day.events.size(), start + MAX_BUCKET_EVENTS)));
+            }
+        }
+        List<WriteModel<Document>> writes = new ArrayList<>(chunks.size());
+        for (DayIntake chunk : chunks) {
+            // Goes into a bucket of the day with room for the whole chunk; when there is none the
+            // upsert starts a new one, so no bucket holds more than MAX_BUCKET_EVENTS.
+            writes.add(new UpdateOneModel<>(
+                    Filters.and(Filters.eq("email", chunk.email), Filters.eq("day", new Date(chunk.day)),
+                            Filters.lte("count", MAX_BUCKET_EVENTS - chunk.events.size())),
+                    Updates.combine(Updates.pushEach("events", chunk.events), Updates.inc("count", chunk.events.size())),
+                    UPSERT));
+        }
+        return rejected(dayBuckets, writes, chunks);
+    }
+
+    @Override
+    public List<DayIntake> addToTotals(List<DayIntake> days) {
+        List<WriteModel<Document>> writes = new ArrayList<>(days.size());
+        for (DayIntake day : days) {
+            writes.add(new UpdateOneModel<>(
+                    Filters.and(Filters.eq("email", day.email), Filters.eq("day", new Date(day.day))),
+                    Updates.combine(Updates.inc("total", day.total), Updates.inc("entries", day.events.size())),
+                    UPSERT));
+        }
+        return rejected(dailyTotals, writes, days);
+    }
+
+    /**
+     * Runs one unordered bulk write of {@code writes}, made from {@code days} in the same order,
+     * and returns the days whose write the server rejected.
+     */
+    private static List<DayIntake> rejected(MongoCollection<Document> collection, List<WriteModel<Document>> writes,
+            List<DayIntake> days) {
+        try {
+            collection.bulkWrite(writes, UNORDERED);
+            return List.of();
+        } catch (MongoBulkWriteException e) {
+            // Unordered: everything not reported as failed was applied.
+            List<DayIntake> failed = new ArrayList<>();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                failed.add(days.get(error.getIndex()));
+            }
+            return failed;
+        }
+    }
+
+    private static DayIntake slice(DayIntake day, int from, int to) {
+        if (from == 0 && to == day.events.size()) {
+            return day;
+        }
+        List<Document> events = day.events.subList(from, to);
+        int total = 0;
+        for (Document event : events) {
+            total += event.getInteger("a", 0);
+        }
+        return new DayIntake(day.email, day.day, events, total);
+    }
+
+    @Override
+    public Map<Long, DailyTotal> dailyTotals(String email, long fromDay, long toDay) {
+        Map<Long, DailyTotal> totals = new HashMap<>();
+        for (Document day : dailyTotals.find(Filters.and(
+                Filters.eq("email", email),
+                Filters.gte("day", new Date(fromDay)),
+                Filters.lte("day", new Date(toDay))))) {
+            totals.put(day.getDate("day").getTime(), new DailyTotal(day.getInteger("total", 0), day.getInteger("entries", 0)));
+        }
+        return totals;
+    }
+
+    @Override
+    public Document levelRecord(String email) {
+        return levels.find(Filters.eq("email", email)).first();
+    }
+
+    @Override
+    public Iterable<Document> history(String email, int batchSize) {
+        return dayBuckets.find(Filters.eq("email", email)).sort(Sorts.ascending("day")).batchSize(batchSize);
+    }
+}
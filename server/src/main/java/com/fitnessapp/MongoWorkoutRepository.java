@@ -0,0 +1,161 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * Workouts in the workouts collection. {@code workoutSummaries} holds one small document per
+ * (email, period, key) with summed calories, duration and count, and the ids of the workouts
+ * counted; {@code workoutStreaks} holds one document per user with the last active day and the
+ * current and longest run of consecutive active days.
+ */
+class MongoWorkoutRepository implements WorkoutRepository {
+
+    private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+
+    private final MongoCollection<Document> workouts;
+    private final MongoCollection<Document> summaries;
+    private final MongoCollection<Document> streaks;
+
+    MongoWorkoutRepository(MongoDatabase database) {
+        workouts = database.getCollection("workouts");
+        // For exports.
+        workouts.createIndex(Indexes.ascending("email", "_id"));
+        summaries = database.getCollection("workoutSummaries");
+        summaries.createIndex(Indexes.ascending("email", "period", "key"), new IndexOptions().unique(true));
+        summaries.createIndex(Indexes.ascending("period", "key"));
+        streaks = database.getCollection("workoutStreaks");
+        streaks.createIndex(Indexes.ascending("email"), new IndexOptions().unique(true));
+    }
+
+    @Override
+    public void insert(List<Document> batch) {
+        try {
+            workouts.insertMany(batch, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            // Duplicate keys are workouts an earlier, partially applied attempt already stored.
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * One upsert per summary, and one streak update per active day in day order.
+     */
+    @Override
+    public void addSummaries(Collection<WorkoutSummaries.Totals> totals, Map<String, SortedSet<Long>> activeDays) {
+        if (totals.isEmpty()) {
+            return;
+        }
+        List<WriteModel<Document>> sums = new ArrayList<>(totals.size());
+        for (WorkoutSummaries.Totals t : totals) {
+            sums.add(new UpdateOneModel<>(
+                    Filters.and(Filters.eq("email", t.email), Filters.eq("period", t.period), Filters.eq("key", t.key)),
+                    summaryUpdate(t),
+                    UPSERT));
+        }
+
+        List<WriteModel<Document>> streakUpdates = new ArrayList<>();
+        activeDays.forEach((email, days) -> {
+            for (long day : days) {
+                streakUpdates.add(new UpdateOneModel<>(Filters.eq("email", email), streakUpdate(day), UPSERT));
+            }
+        });
+
+        summaries.bulkWrite(sums, new BulkWriteOptions().ordered(false));
+        // Ordered, so consecutive days of one user are applied in sequence.
+        streaks.bulkWrite(streakUpdates, new BulkWriteOptions().ordered(true));
+    }
+
+    @Override
+    public List<Document> summaries(String email, String period, String fromKey, String toKey) {
+        return summaries.find(Filters.and(
+                Filters.eq("email", email),
+                Filters.eq("period", period),
+                Filters.gte("key", fromKey),
+                Filters.lte("key", toKey)))
+                .projection(Projections.exclude("workouts"))
+                .sort(Sorts.ascending("key"))
+                .into(new ArrayList<>());
+    }
+
+    @Override
+    public Iterable<Document> summariesFor(String period, String key) {
+        return summaries.find(Filters.and(Filters.eq("period", period), Filters.eq("key", key)))
+                .projection(Projections.include("email", "calories"))
+                .batchSize(10_000);
+    }
+
+    @Override
+    public Document streak(String email) {
+        return streaks.find(Filters.eq("email", email)).first();
+    }
+
+    @Override
+    public Iterable<Document> workouts(String email, int batchSize) {
+        return workouts.find(Filters.eq("email", email)).sort(Sorts.ascending("_id")).batchSize(batchSize);
+    }
+
+    /**
+     * Pipeline update adding the workouts of {@code t} that the summary has not counted yet and
+     * remembering their ids, so a batch recorded again is not counted twice.
+     */
+    private static List<Bson> summaryUpdate(WorkoutSummaries.Totals t) {
+        Document counted = new Document("$ifNull", List.of("$workouts", List.of()));
+        Document uncounted = new Document("$filter", new Document("input", t.workouts)
+                .append("cond", new Document("$not", List.of(new Document("$in", List.of("$$this.i", counted))))));
+        return List.of(
+                new Document("$set", new Document("adding", uncounted)),
+                new Document("$set", new Document("calories", sum("$calories", new Document("$sum", "$adding.c")))
+                        .append("duration", sum("$duration", new Document("$sum", "$adding.d")))
+                        .append("count", sum("$count", new Document("$size", "$adding")))
+                        .append("workouts", new Document("$concatArrays", List.of(counted, "$adding.i")))),
+                new Document("$unset", "adding"));
+    }
+
+    private static Document sum(String field, Document increment) {
+        return new Document("$add", List.of(new Document("$ifNull", List.of(field, 0)), increment));
+    }
+
+    /**
+     * Pipeline update extending the streak when {@code day} follows the last active day, keeping
+     * it for a repeat or an older day, and restarting it otherwise.
+     */
+    private static List<Bson> streakUpdate(long day) {
+        Document current = new Document("$switch", new Document("branches", List.of(
+                new Document("case", new Document("$gte", List.of("$lastDay", day))).append("then", "$current"),
+                new Document("case", new Document("$eq", List.of("$lastDay", day - 1)))
+                        .append("then", new Document("$add", List.of("$current", 1)))))
+                .append("default", 1));
+        return List.of(
+                new Document("$set", new Document("current", current)
+                        .append("lastDay", new Document("$max", List.of("$lastDay", day)))),
+                new Document("$set", new Document("longest", new Document("$max", List.of("$longest", "$current")))));
+    }
+}
@@ -0,0 +1,81 @@
+package com.fitnessapp;
+
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * Storage for the social feed. Posts are addressed by their client supplied {@code id}; the
+ * feed is ordered by {@code _id}, which the store assigns on insert.
+ *
+ * Comments are numbered in the order they are added and kept in buckets of
+ * {@link #COMMENT_BUCKET_SIZE}; the post itself only carries the latest
+ * {@link #COMMENT_PREVIEW_SIZE} of them.
+ */
+interface PostRepository {
+
+    int COMMENT_BUCKET_SIZE = 100;
+    int COMMENT_PREVIEW_SIZE = 3;
+
+    /**
+     * Returns up to {@code limit} posts, newest first, starting after {@code before} (exclusive)
+     * or at the newest post when it is null. The posts are read as they are iterated; close the
+     * iterator when it is {@link java.io.Closeable}.
+     */
+    Iterable<Document> page(ObjectId before, int limit);
+
+    Document find(String id);
+
+    /**
+     * Returns the posts with the given ids in the same order, leaving out those that do not exist.
+     */
+    List<Document> findAll(List<String> ids);
+
+    /**
+     * Every post, oldest first, with at least its {@code id}, {@code text} and {@code email}; read
+     * in batches, for rebuilding the search index.
+     */
+    Iterable<Document> scan();
+
+    /**
+     * Every post written by {@code email}, oldest first, read {@code batchSize} at a time.
+     */
+    Iterable<Document> postsBy(String email, int batchSize);
+
+    /**
+     * Stores a new post, setting its {@code _id}.
+     */
+    void insert(Document post);
+
+    /**
+     * Adds {@code email} to the post's likes and returns the updated post, at least its
+     * {@code id}, {@code likeCount} and {@code commentCount}, or null when the post does not exist
+     * or {@code email} already liked it.
+     */
+    Document addLike(String id, String email);
+
+    /**
+     * Appends a comment and returns the updated post, at least its {@code id}, counters and
+     * {@code comments} preview, or null when the post does not exist.
+     */
+    Document addComment(String id, Document comment);
+
+    /**
+     * Returns the newest bucket of comments numbered below {@code beforeBucket}, or the newest
+     * bucket when it is null; null when there is none.
+     */
+    CommentBucket comments(String id, Long beforeBucket);
+
+    class CommentBucket {
+
+        final long bucket;
+        // Oldest first
+        final List<Document> comments;
+
+        CommentBucket(long bucket, List<Document> comments) {
+            this.bucket = bucket;
+            this.comments = comments;
+        }
+    }
+}
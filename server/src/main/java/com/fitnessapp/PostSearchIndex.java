@@ -0,0 +1,372 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.bson.Document;
+
+/**
+ * Inverted index over the feed for GET /posts/search, held on the heap.
+ *
+ * Posts are numbered in feed order as they are indexed. Each word of a post's text maps to the
+ * sorted ordinals of the posts containing it, and each author email to the ordinals of their
+ * posts. Posting lists are delta encoded as varints in blocks of {@link #BLOCK_SIZE}, with the
+ * first ordinal of every block kept aside so that a lookup can skip to the right block.
+ *
+ * A query matches the posts containing every term (and written by the author, if given), newest
+ * first. The lists are intersected rarest first: the rarest one proposes candidates from the
+ * newest down and the others skip to them, so a query stops after {@code limit} hits however
+ * common its terms are.
+ *
+ * Only posts created through this server are added after the initial {@link #rebuild}.
+ */
+class PostSearchIndex {
+
+    static final int BLOCK_SIZE = 128;
+    // Longer words are cut, so a pasted URL does not make a key of its own length.
+    private static final int MAX_TERM_LENGTH = 32;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock.
+    private Segment segment = new Segment();
+    // Posts added while a rebuild scans the store; guarded by lock, null when not rebuilding.
+    private List<String[]> pending;
+    private final Set<String> pendingIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Indexes a newly created post. It must be newer than every post indexed so far.
+     */
+    void add(String id, String text, String email) {
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.add(new String[]{id, text, email});
+                pendingIds.add(id);
+            } else {
+                segment.add(id, text, email);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the index with one built from {@code posts}, oldest first. Queries see the old
+     * index until the new one is complete; posts added meanwhile are carried over.
+     */
+    void rebuild(Iterable<Document> posts) {
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+            pendingIds.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long started = System.currentTimeMillis();
+        Segment fresh = new Segment();
+        try {
+            for (Document post : posts) {
+                String id = post.getString("id");
+                // Added while scanning: indexed after the scan, in the order it was added.
+                if (id != null && !pendingIds.contains(id)) {
+                    fresh.add(id, post.getString("text"), post.getString("email"));
+                }
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                drainPending(segment);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            drainPending(fresh);
+            segment = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        System.out.println("Post search index: " + fresh.size + " posts, " + fresh.terms.size() + " terms, "
+                + fresh.postingBytes / 1024 + " KiB of postings, built in " + (System.currentTimeMillis() - started) + " ms");
+    }
+
+    private void drainPending(Segment target) {
+        for (String[] post : pending) {
+            target.add(post[0], post[1], post[2]);
+        }
+        pending = null;
+        pendingIds.clear();
+    }
+
+    /**
+     * Returns the ids of up to {@code limit} posts containing every word of {@code query} and
+     * written by {@code author}, newest first. Either may be null, not both.
+     */
+    List<String> search(String query, String author, int limit) {
+        lock.readLock().lock();
+        try {
+            return segment.search(query == null ? Set.of() : tokenize(query),
+                    author == null ? null : author.trim().toLowerCase(Locale.ROOT), limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return segment.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate heap taken by the posting lists, not counting the term keys.
+     */
+    long postingBytes() {
+        lock.readLock().lock();
+        try {
+            return segment.postingBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits {@code text} into distinct lower case words of letters and digits, in order.
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                terms.add(text.substring(start, Math.min(i, start + MAX_TERM_LENGTH)).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private static class Segment {
+
+        final Map<String, PostingList> terms = new HashMap<>();
+        final Map<String, PostingList> authors = new HashMap<>();
+        String[] ids = new String[1024];
+        int size;
+        long postingBytes;
+
+        void add(String id, String text, String email) {
+            int ordinal = size;
+            if (ordinal == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[ordinal] = id;
+            size++;
+            if (text != null) {
+                for (String term : tokenize(text)) {
+                    postingBytes += terms.computeIfAbsent(term, t -> new PostingList()).add(ordinal);
+                }
+            }
+            if (email != null) {
+                String author = email.trim().toLowerCase(Locale.ROOT);
+                postingBytes += authors.computeIfAbsent(author, a -> new PostingList()).add(ordinal);
+            }
+        }
+
+        List<String> search(Set<String> query, String author, int limit) {
+            List<PostingList> lists = new ArrayList<>(query.size() + 1);
+            for (String term : query) {
+                lists.add(terms.get(term));
+            }
+            if (author != null) {
+                lists.add(authors.get(author));
+            }
+            if (lists.isEmpty() || lists.contains(null)) {
+                return List.of();
+            }
+            lists.sort((a, b) -> Integer.compare(a.count, b.count));
+
+            Cursor[] cursors = new Cursor[lists.size()];
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = new Cursor(lists.get(i));
+            }
+            List<String> hits = new ArrayList<>(Math.min(limit, lists.get(0).count));
+            int target = Integer.MAX_VALUE;
+            candidates:
+            while (hits.size() < limit) {
+                int candidate = cursors[0].seek(target);
+                if (candidate < 0) {
+                    break;
+                }
+                for (int i = 1; i < cursors.length; i++) {
+                    int found = cursors[i].seek(candidate);
+                    if (found < 0) {
+                        break candidates;
+                    }
+                    if (found != candidate) {
+                        target = found;
+                        continue candidates;
+                    }
+                }
+                hits.add(ids[candidate]);
+                target = candidate - 1;
+            }
+            return hits;
+        }
+    }
+
+    /**
+     * Ascending ordinals. Block b starts at ordinal {@code blocks[2b]}; the gaps to the rest of
+     * its ordinals are varints in {@code bytes} from offset {@code blocks[2b + 1]}. A list of one
+     * ordinal holds it in {@code last} only.
+     */
+    private static class PostingList {
+
+        int count;
+        int last;
+        int[] blocks;
+        byte[] bytes;
+        int length;
+
+        /**
+         * Appends {@code ordinal} and returns how many bytes the list grew by.
+         */
+        int add(int ordinal) {
+            if (count > 0 && ordinal == last) {
+                return 0;
+            }
+            int grown = 0;
+            if (count == 0) {
+                grown = 32;
+            } else if (count % BLOCK_SIZE == 0) {
+                int block = count / BLOCK_SIZE;
+                if (2 * block == blocks.length) {
+                    grown += blocks.length * 4;
+                    blocks = Arrays.copyOf(blocks, blocks.length * 2);
+                }
+                blocks[2 * block] = ordinal;
+                blocks[2 * block + 1] = length;
+            } else {
+                if (blocks == null) {
+                    blocks = new int[]{last, 0};
+                    grown += blocks.length * 4;
+                }
+                grown += writeGap(ordinal - last);
+            }
+            count++;
+            last = ordinal;
+            return grown;
+        }
+
+        private int writeGap(int gap) {
+            int grown = 0;
+            if (bytes == null) {
+                bytes = new byte[8];
+                grown = bytes.length;
+            } else if (length + 5 > bytes.length) {
+                int capacity = Math.max(length + 5, bytes.length + (bytes.length >> 1));
+                grown = capacity - bytes.length;
+                bytes = Arrays.copyOf(bytes, capacity);
+            }
+            while ((gap & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            bytes[length++] = (byte) gap;
+            return grown;
+        }
+
+        int blockCount() {
+            return (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        }
+
+        int blockFirst(int block) {
+            return blocks == null ? last : blocks[2 * block];
+        }
+
+        /**
+         * Decodes block {@code block} into {@code out} and returns how many ordinals it holds.
+         */
+        int decode(int block, int[] out) {
+            int n = block == blockCount() - 1 ? count - block * BLOCK_SIZE : BLOCK_SIZE;
+            int ordinal = blockFirst(block);
+            out[0] = ordinal;
+            int offset = blocks == null ? 0 : blocks[2 * block + 1];
+            for (int i = 1; i < n; i++) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[offset++];
+                    gap |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                ordinal += gap;
+                out[i] = ordinal;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Walks a posting list from the newest ordinal down, one decoded block at a time.
+     */
+    private static class Cursor {
+
+        private final PostingList list;
+        private final int[] decoded = new int[BLOCK_SIZE];
+        private int block = -1;
+        private int position;
+
+        Cursor(PostingList list) {
+            this.list = list;
+        }
+
+        /**
+         * Returns the largest ordinal not above {@code target}, or -1 when there is none.
+         * Targets must not increase between calls.
+         */
+        int seek(int target) {
+            if (block < 0 || list.blockFirst(block) > target) {
+                int low = 0;
+                int high = block < 0 ? list.blockCount() - 1 : block - 1;
+                int found = -1;
+                while (low <= high) {
+                    int middle = (low + high) >>> 1;
+                    if (list.blockFirst(middle) <= target) {
+                        found = middle;
+                        low = middle + 1;
+                    } else {
+                        high = middle - 1;
+                    }
+                }
+                if (found < 0) {
+                    return -1;
+                }
+                block = found;
+                position = list.decode(block, decoded) - 1;
+            }
+            while (decoded[position] > target) {
+                position--;
+            }
+            return decoded[position];
+        }
+    }
+}
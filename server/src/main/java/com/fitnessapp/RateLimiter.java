@@ -0,0 +1,330 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import spark.Request;
+import spark.Response;
+import static spark.Spark.afterAfter;
+import static spark.Spark.before;
+import static spark.Spark.halt;
+
+/**
+ * Admission control in front of the routes, answering 429 with Retry-After.
+ *
+ * Writes (anything but GET, HEAD and OPTIONS) are limited per caller and route with token
+ * buckets. The caller is the signed-in uid, or the client address without a session. Limits are
+ * set per route, as declared in Spark, with ratelimit.rules: "/water=2/s:20" allows 2 requests a
+ * second in bursts of up to 20 (rates may also be per minute, "/m"). Other write routes share
+ * ratelimit.default, which may be "off". Buckets live in a striped map of at most
+ * ratelimit.maxCallers callers; callers idle long enough for every bucket to refill make room
+ * for new ones.
+ *
+ * Every request past the filter counts as in flight until it has been answered. While the
+ * average MongoDB latency is above ratelimit.mongoLatencyMs, requests beyond
+ * ratelimit.maxConcurrent in flight are turned away immediately, so a struggling database is
+ * not buried under a growing queue.
+ */
+class RateLimiter {
+
+    static final String DEFAULT_RULES = "/signin=1/s:10,/signup=1/m:5,/water=2/s:20,/water/reset=1/s:5,"
+            + "/bmi=2/s:10,/bmi/batch=1/s:2,/workouts/start=1/s:5,/workouts/end=1/s:10,/posts=1/s:5,/posts/:id/like=5/s:30,"
+            + "/posts/:id/comment=1/s:10";
+
+    private static final String ADMITTED = "ratelimit.admitted";
+    private static final Set<String> UNLIMITED_PATHS = Set.of("/live", "/ready", "/metrics");
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final LongAdder limited = new LongAdder();
+    private static final LongAdder shed = new LongAdder();
+
+    private static Map<String, Limit> exactLimits;
+    // Patterns with a :param segment, matched segment by segment.
+    private static Limit[] patternLimits;
+    private static Limit defaultLimit;
+    private static Stripe[] callers;
+    private static int maxConcurrent;
+    private static long latencyThresholdNanos;
+
+    static void init() {
+        connect(System.getProperty("ratelimit.rules", DEFAULT_RULES),
+                System.getProperty("ratelimit.default", "10/s:50"),
+                Integer.getInteger("ratelimit.maxCallers", 100_000),
+                Integer.getInteger("ratelimit.maxConcurrent", 64),
+                Long.getLong("ratelimit.mongoLatencyMs", 250L));
+
+        before(RateLimiter::admit);
+        afterAfter(RateLimiter::release);
+
+        Metrics.counter("fitsync_rate_limited_total", "Write requests refused by a per-caller rate limit.", limited::sum);
+        Metrics.counter("fitsync_load_shed_total", "Requests refused while MongoDB was slow.", shed::sum);
+        Metrics.gauge("fitsync_requests_in_flight", "Requests being served.", inFlight::get);
+    }
+
+    /**
+     * Sets the limits without installing the filters.
+     */
+    static void connect(String rules, String defaultRule, int maxCallers, int concurrency, long latencyThresholdMs) {
+        Map<String, Limit> parsed = new HashMap<>();
+        List<Limit> patterns = new ArrayList<>();
+        int index = 0;
+        for (String rule : rules.split(",")) {
+            String[] parts = rule.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("ratelimit.rules entries look like /path=rate/s:burst, not '" + rule + "'");
+            }
+            String route = parts[0].trim();
+            Limit limit = Limit.parse(route, parts[1].trim(), index++);
+            if (route.contains("/:")) {
+                patterns.add(limit);
+            } else {
+                parsed.put(route, limit);
+            }
+        }
+        exactLimits = parsed;
+        patternLimits = patterns.toArray(new Limit[0]);
+        defaultLimit = defaultRule.equals("off") ? null : Limit.parse("*", defaultRule, index++);
+
+        Stripe[] stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(Math.max(1, maxCallers / STRIPES), index);
+        }
+        callers = stripes;
+        maxConcurrent = concurrency;
+        latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+    }
+
+    static void admit(Request req, Response res) {
+        String path = req.pathInfo();
+        if (UNLIMITED_PATHS.contains(path)) {
+            return;
+        }
+
+        // Counted whatever the latency, so the cap sees the requests already running when the
+        // database slows down. A refusal below still goes through release().
+        if (inFlight.incrementAndGet() > maxConcurrent && Metrics.mongoLatencyNanos() > latencyThresholdNanos) {
+            inFlight.decrementAndGet();
+            shed.increment();
+            reject(res, 1, "The server is busy, try again shortly.");
+        }
+        req.attribute(ADMITTED, Boolean.TRUE);
+
+        String method = req.requestMethod();
+        if (method.equals("GET") || method.equals("HEAD") || method.equals("OPTIONS")) {
+            return;
+        }
+        Limit limit = limitFor(path);
+        if (limit == null) {
+            return;
+        }
+        String caller = req.attribute("uid");
+        if (caller == null) {
+            caller = req.ip();
+        }
+        long now = System.nanoTime();
+        long waitNanos = callerState(caller, now).acquire(limit, now);
+        if (waitNanos > 0) {
+            limited.increment();
+            reject(res, (waitNanos + 999_999_999) / 1_000_000_000, "Too many requests, slow down.");
+        }
+    }
+
+    private static Limit limitFor(String path) {
+        Limit limit = exactLimits.get(path);
+        if (limit != null) {
+            return limit;
+        }
+        for (Limit pattern : patternLimits) {
+            if (pattern.matches(path)) {
+                return pattern;
+            }
+        }
+        return defaultLimit;
+    }
+
+    static void release(Request req, Response res) {
+        if (req.attribute(ADMITTED) != null) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static void reject(Response res, long retryAfterSeconds, String message) {
+        res.header("Retry-After", String.valueOf(retryAfterSeconds));
+        res.type("application/json");
+        halt(429, Json.toJson(new ErrorResponse(message)));
+    }
+
+    private static Caller callerState(String caller, long now) {
+        // The top bits, as the map inside the stripe indexes by the low ones.
+        return callers[(caller.hashCode() * 0x9E3779B9) >>> (32 - STRIPE_BITS)].get(caller, now);
+    }
+
+    /**
+     * A rate of {@code 1e9 / intervalNanos} requests a second with bursts of up to
+     * {@code burst}, kept as a generic cell rate algorithm: one "theoretical arrival time" per
+     * caller, which a request pushes {@code intervalNanos} into the future and which may run at
+     * most {@code burst} intervals ahead of now.
+     */
+    private static class Limit {
+
+        // The route split at '/', e.g. {"", "posts", ":id", "like"}
+        final String[] segments;
+        final int index;
+        final long intervalNanos;
+        final long toleranceNanos;
+
+        Limit(String route, int index, long intervalNanos, int burst) {
+            this.segments = route.split("/", -1);
+            this.index = index;
+            this.intervalNanos = intervalNanos;
+            this.toleranceNanos = intervalNanos * burst;
+        }
+
+        /**
+         * Whether {@code path} has this route's segments, any value standing for a :param one.
+         * Walks the path in place, since it runs on every write.
+         */
+        boolean matches(String path) {
+            int start = 0;
+            for (int i = 0; i < segments.length; i++) {
+                int end = path.indexOf('/', start);
+                if (end < 0) {
+                    end = path.length();
+                    if (i != segments.length - 1) {
+                        return false;
+                    }
+                } else if (i == segments.length - 1) {
+                    return false;
+                }
+                String segment = segments[i];
+                if (segment.startsWith(":")
+                        ? end == start
+                        : end - start != segment.length() || !path.regionMatches(start, segment, 0, segment.length())) {
+                    return false;
+                }
+                start = end + 1;
+            }
+            return true;
+        }
+
+        static Limit parse(String route, String rule, int index) {
+            try {
+                String[] rateAndBurst = rule.split(":");
+                String[] rateAndUnit = rateAndBurst[0].split("/");
+                double rate = Double.parseDouble(rateAndUnit[0]);
+                long unitNanos = rateAndUnit[1].equals("s") ? TimeUnit.SECONDS.toNanos(1)
+                        : rateAndUnit[1].equals("m") ? TimeUnit.MINUTES.toNanos(1) : -1;
+                int burst = rateAndBurst.length > 1 ? Integer.parseInt(rateAndBurst[1]) : 1;
+                if (rate <= 0 || unitNanos < 0 || burst < 1) {
+                    throw new IllegalArgumentException();
+                }
+                return new Limit(route, index, (long) (unitNanos / rate), burst);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Rate limits look like 2/s:20 or 5/m:5, not '" + rule + "'");
+            }
+        }
+    }
+
+    /**
+     * The arrival times of one caller, one per limit. Updated with compare-and-set, so requests of
+     * the same caller never wait on each other.
+     */
+    private static class Caller {
+
+        final AtomicLongArray arrivals;
+
+        Caller(int limits) {
+            arrivals = new AtomicLongArray(limits);
+            for (int i = 0; i < limits; i++) {
+                arrivals.set(i, Long.MIN_VALUE);
+            }
+        }
+
+        /**
+         * Takes a token and returns 0, or returns how long to wait for one.
+         */
+        long acquire(Limit limit, long now) {
+            while (true) {
+                long arrival = arrivals.get(limit.index);
+                long next = Math.max(arrival, now) + limit.intervalNanos;
+                long excess = next - now - limit.toleranceNanos;
+                if (excess > 0) {
+                    return excess;
+                }
+                if (arrivals.compareAndSet(limit.index, arrival, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        long latestArrival() {
+            long latest = Long.MIN_VALUE;
+            for (int i = 0; i < arrivals.length(); i++) {
+                latest = Math.max(latest, arrivals.get(i));
+            }
+            return latest;
+        }
+    }
+
+    /**
+     * One of the {@link #STRIPES} parts of the caller map. Lookups do not lock; adding a caller
+     * locks the stripe, and when it is full first drops every caller whose buckets have all
+     * refilled, since a new caller starts out the same. If that frees less than a quarter of the
+     * stripe, the callers closest to refilled go too.
+     */
+    private static class Stripe {
+
+        private final Map<String, Caller> callers = new ConcurrentHashMap<>();
+        private final int capacity;
+        private final int limitCount;
+
+        Stripe(int capacity, int limitCount) {
+            this.capacity = capacity;
+            this.limitCount = limitCount;
+        }
+
+        Caller get(String key, long now) {
+            Caller caller = callers.get(key);
+            return caller != null ? caller : add(key, now);
+        }
+
+        private synchronized Caller add(String key, long now) {
+            if (callers.size() >= capacity) {
+                evict(now);
+            }
+            return callers.computeIfAbsent(key, k -> new Caller(limitCount));
+        }
+
+        private void evict(long now) {
+            callers.values().removeIf(caller -> caller.latestArrival() <= now);
+            int excess = callers.size() - capacity * 3 / 4;
+            if (excess > 0) {
+                List<Map.Entry<String, Caller>> byArrival = new ArrayList<>(callers.entrySet());
+                byArrival.sort(Comparator.comparingLong(entry -> entry.getValue().latestArrival()));
+                for (Map.Entry<String, Caller> entry : byArrival.subList(0, excess)) {
+                    callers.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private static class ErrorResponse {
+
+        final String error;
+
+        ErrorResponse(String error) {
+            this.error = error;
+        }
+    }
+}
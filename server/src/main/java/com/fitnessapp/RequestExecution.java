@@ -0,0 +1,131 @@
+package com.fitnessapp;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+import static spark.Spark.threadPool;
+
+/**
+ * Chooses the threads Jetty runs requests on, with the server.threads system property:
+ *
+ * "pool" (the default) is Spark's bounded QueuedThreadPool, sized by server.maxThreads (200),
+ * server.minThreads (8) and server.threadIdleTimeoutMs (60000). Every blocking MongoDB or
+ * Firebase call holds one of these threads, so maxThreads caps the requests in flight.
+ *
+ * "virtual" starts a virtual thread per task (Java 21 or later), so a request waiting on I/O
+ * only costs a parked virtual thread; the MongoDB connection pool (mongo.maxPoolSize,
+ * mongo.maxWaitQueueSize) becomes the limit instead. On older runtimes it falls back to the pool.
+ *
+ * Must run before the first route is registered.
+ */
+class RequestExecution {
+
+    static String configure() {
+        String mode = System.getProperty("server.threads", "pool");
+        if (mode.equals("virtual")) {
+            ThreadFactory factory = virtualThreadFactory();
+            if (factory != null) {
+                EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+                        new EmbeddedJettyFactory().withThreadPool(new VirtualThreadPool(factory)));
+                return "virtual";
+            }
+            System.out.println("Virtual threads need Java 21 or later (running " + System.getProperty("java.version")
+                    + "), using the thread pool.");
+        } else if (!mode.equals("pool")) {
+            throw new IllegalArgumentException("server.threads must be 'pool' or 'virtual', not '" + mode + "'");
+        }
+        threadPool(Integer.getInteger("server.maxThreads", 200),
+                Integer.getInteger("server.minThreads", 8),
+                Integer.getInteger("server.threadIdleTimeoutMs", 60_000));
+        return "pool";
+    }
+
+    /**
+     * Thread.ofVirtual().name("http-", 0).factory(), looked up reflectively because the server
+     * is still built for Java 11; null when the runtime has no virtual threads.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtual = builder.getMethod("name", String.class, long.class).invoke(virtual, "http-", 0L);
+            return (ThreadFactory) builder.getMethod("factory").invoke(virtual);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Could not create virtual threads", e);
+        }
+    }
+
+    /**
+     * A Jetty thread pool that never queues: each task gets a fresh thread from the factory.
+     * Stopping the server stops the pool, which lets join() return.
+     */
+    private static class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+        private final ExecutorService executor;
+        private final AtomicInteger running = new AtomicInteger();
+
+        VirtualThreadPool(ThreadFactory factory) {
+            this.executor = newThreadPerTaskExecutor(factory);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            executor.execute(() -> {
+                running.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+        }
+
+        @Override
+        protected void doStop() throws Exception {
+            executor.shutdown();
+            super.doStop();
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            while (!executor.awaitTermination(1, TimeUnit.DAYS)) {
+                // keep waiting
+            }
+        }
+
+        @Override
+        public int getThreads() {
+            return running.get();
+        }
+
+        @Override
+        public int getIdleThreads() {
+            return 0;
+        }
+
+        @Override
+        public boolean isLowOnThreads() {
+            return false;
+        }
+
+        private static ExecutorService newThreadPerTaskExecutor(ThreadFactory factory) {
+            try {
+                return (ExecutorService) java.util.concurrent.Executors.class
+                        .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create a virtual thread executor", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.fitnessapp;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Short-lived, stateless session tokens: {@code base64url(uid \n email \n expiry)} followed by
+ * a dot and the HMAC-SHA256 of that payload. Verifying one is a local hash, so protected routes
+ * never call out to Firebase.
+ */
+class SessionTokens {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final ThreadLocal<Mac> macs;
+
+    SessionTokens(byte[] secret, long ttlSeconds) {
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Uses the base64 secret in {@code secretProperty} when set; otherwise a random one, which
+     * means tokens do not survive a restart.
+     */
+    static SessionTokens fromConfig(String secretProperty, long ttlSeconds) {
+        String configured = System.getProperty(secretProperty, System.getenv("FITSYNC_SESSION_SECRET"));
+        byte[] secret;
+        if (configured != null) {
+            secret = Base64.getDecoder().decode(configured);
+        } else {
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            System.out.println("No session secret configured; sessions end when the server restarts.");
+        }
+        return new SessionTokens(secret, ttlSeconds);
+    }
+
+    String mint(String uid, String email) {
+        long expiry = System.currentTimeMillis() / 1000 + ttlSeconds;
+        byte[] payload = (uid + '\n' + email + '\n' + expiry).getBytes(StandardCharsets.UTF_8);
+        return ENCODER.encodeToString(payload) + '.' + ENCODER.encodeToString(macs.get().doFinal(payload));
+    }
+
+    /**
+     * Returns the identity in {@code token}, or null when it is malformed, forged or expired.
+     */
+    IdentityProvider.Identity verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        try {
+            byte[] payload = DECODER.decode(token.substring(0, dot));
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, macs.get().doFinal(payload))) {
+                return null;
+            }
+            String[] fields = new String(payload, StandardCharsets.UTF_8).split("\n", -1);
+            if (fields.length != 3 || Long.parseLong(fields[2]) < System.currentTimeMillis() / 1000) {
+                return null;
+            }
+            return new IdentityProvider.Identity(fields[0], fields[1]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.fitnessapp;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import spark.Request;
+import spark.Response;
+import static spark.Spark.before;
+import static spark.Spark.get;
+import static spark.Spark.halt;
+
+/**
+ * Lets the server listen before its dependencies are up. Each subsystem (a controller's storage,
+ * caches and indexes) starts on its own thread while the routes are already bound; until it is
+ * ready, requests to its routes get a 503 with Retry-After. A subsystem that fails to start is
+ * retried every startup.retryMs (5000).
+ *
+ * GET /live answers as soon as the server listens; GET /ready answers 200 once every subsystem
+ * started eagerly is ready, and lists the state and start time of each. Times are milliseconds of
+ * JVM uptime, so they include class loading before main.
+ */
+class Startup {
+
+    private static final long RETRY_MS = Long.getLong("startup.retryMs", 5_000L);
+
+    private static final List<Subsystem> subsystems = new CopyOnWriteArrayList<>();
+    private static final Map<String, Long> phases = new LinkedHashMap<>();
+    private static final ScheduledThreadPoolExecutor executor = newExecutor();
+    // Short-circuits the gate once everything is up.
+    private static volatile boolean ready = true;
+    private static boolean launched;
+
+    /**
+     * Installs the readiness gate and the /live and /ready routes. Call after Metrics.init(), so
+     * that rejected requests are counted, and before any filter that needs a subsystem.
+     */
+    static void init() {
+        before(Startup::gate);
+        get("/live", Startup::live);
+        get("/ready", Startup::ready);
+    }
+
+    /**
+     * Runs {@code task} in the background once startup is launched, holding back requests whose
+     * path starts with one of {@code pathPrefixes} until it completed. The task is retried until
+     * it succeeds, so it must be safe to run again after a failure.
+     */
+    static synchronized void start(String name, Task task, String... pathPrefixes) {
+        Subsystem subsystem = new Subsystem(name, pathPrefixes, true, task);
+        subsystems.add(subsystem);
+        ready = false;
+        if (launched) {
+            executor.execute(() -> attempt(subsystem));
+        }
+    }
+
+    /**
+     * Starts every subsystem registered so far, all at once. Called when the routes are bound, so
+     * that the server listens without waiting for them.
+     */
+    static synchronized void launch() {
+        launched = true;
+        for (Subsystem subsystem : subsystems) {
+            if (subsystem.eager) {
+                executor.execute(() -> attempt(subsystem));
+            }
+        }
+        if (!isWaiting()) {
+            allReady();
+        }
+    }
+
+    /**
+     * Returns a supplier that runs {@code init} on first use and then returns its result. A failed
+     * initialization is thrown to the caller and tried again on the next call; lazy subsystems
+     * show on /ready but never hold it back.
+     */
+    static <T> Supplier<T> lazy(String name, Callable<T> init) {
+        Subsystem subsystem = new Subsystem(name, new String[0], false, null);
+        subsystems.add(subsystem);
+        return new Supplier<T>() {
+            private volatile T value;
+
+            @Override
+            public T get() {
+                T current = value;
+                if (current != null) {
+                    return current;
+                }
+                synchronized (this) {
+                    if (value == null) {
+                        subsystem.starting();
+                        try {
+                            value = init.call();
+                        } catch (Exception e) {
+                            subsystem.failed(e);
+                            throw new IllegalStateException(name + " is unavailable: " + e.getMessage(), e);
+                        }
+                        subsystem.ready();
+                    }
+                    return value;
+                }
+            }
+        };
+    }
+
+    /**
+     * Logs that startup reached {@code name} and keeps the time for /ready.
+     */
+    static void phase(String name) {
+        long at = uptime();
+        synchronized (phases) {
+            phases.put(name, at);
+        }
+        System.out.println("Startup: " + name + " at " + at + " ms");
+    }
+
+    private static void attempt(Subsystem subsystem) {
+        subsystem.starting();
+        try {
+            subsystem.task.run();
+        } catch (Exception e) {
+            subsystem.failed(e);
+            System.out.println("Startup: " + subsystem.name + " failed (" + e.getMessage() + "), retrying in " + RETRY_MS + " ms");
+            executor.schedule(() -> attempt(subsystem), RETRY_MS, TimeUnit.MILLISECONDS);
+            return;
+        }
+        subsystem.ready();
+        synchronized (Startup.class) {
+            if (!isWaiting()) {
+                allReady();
+            }
+        }
+    }
+
+    private static void allReady() {
+        ready = true;
+        phase("ready");
+    }
+
+    private static boolean isWaiting() {
+        for (Subsystem subsystem : subsystems) {
+            if (subsystem.eager && subsystem.state != State.READY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void gate(Request req, Response res) {
+        if (ready) {
+            return;
+        }
+        String path = req.pathInfo();
+        for (Subsystem subsystem : subsystems) {
+            if (subsystem.state != State.READY && subsystem.matches(path)) {
+                res.header("Retry-After", "1");
+                halt(503, Json.toJson(new ErrorResponse(subsystem.name + " is starting, try again shortly.")));
+            }
+        }
+    }
+
+    private static Object live(Request req, Response res) {
+        res.type("application/json");
+        return Json.toJson(new LiveResponse(uptime()));
+    }
+
+    private static Object ready(Request req, Response res) {
+        Map<String, SubsystemStatus> statuses = new LinkedHashMap<>();
+        for (Subsystem subsystem : subsystems) {
+            statuses.put(subsystem.name, subsystem.status());
+        }
+        Map<String, Long> reached;
+        synchronized (phases) {
+            reached = new LinkedHashMap<>(phases);
+        }
+        boolean allReady = !isWaiting();
+        res.status(allReady ? 200 : 503);
+        res.type("application/json");
+        return Json.toJson(new ReadyResponse(allReady, uptime(), reached, statuses));
+    }
+
+    private static long uptime() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    private static ScheduledThreadPoolExecutor newExecutor() {
+        AtomicInteger threads = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                Integer.getInteger("startup.threads", 8), r -> {
+                    Thread thread = new Thread(r, "startup-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // Retries are rare, so the threads go away once startup is over.
+        executor.setKeepAliveTime(10, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    interface Task {
+
+        void run() throws Exception;
+    }
+
+    private enum State {
+        COLD, STARTING, READY, FAILED
+    }
+
+    private static class Subsystem {
+
+        final String name;
+        final String[] pathPrefixes;
+        final boolean eager;
+        final Task task;
+        volatile State state = State.COLD;
+        volatile long startedAt;
+        volatile long tookMs;
+        volatile int attempts;
+        volatile String error;
+
+        Subsystem(String name, String[] pathPrefixes, boolean eager, Task task) {
+            this.name = name;
+            this.pathPrefixes = pathPrefixes;
+            this.eager = eager;
+            this.task = task;
+        }
+
+        boolean matches(String path) {
+            for (String prefix : pathPrefixes) {
+                if (path.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void starting() {
+            startedAt = uptime();
+            attempts++;
+            state = State.STARTING;
+        }
+
+        void ready() {
+            tookMs = uptime() - startedAt;
+            error = null;
+            state = State.READY;
+            System.out.println("Startup: " + name + " ready in " + tookMs + " ms");
+        }
+
+        void failed(Exception e) {
+            tookMs = uptime() - startedAt;
+            error = String.valueOf(e.getMessage());
+            state = State.FAILED;
+        }
+
+        SubsystemStatus status() {
+            State current = state;
+            return new SubsystemStatus(current.name().toLowerCase(), current == State.COLD ? null : startedAt,
+                    current == State.READY || current == State.FAILED ? tookMs : null, attempts, error);
+        }
+    }
+
+    private static class LiveResponse {
+
+        final String status = "up";
+        final long uptimeMs;
+
+        LiveResponse(long uptimeMs) {
+            this.uptimeMs = uptimeMs;
+        }
+    }
+
+    private static class ReadyResponse {
+
+        final boolean ready;
+        final long uptimeMs;
+        final Map<String, Long> phases;
+        final Map<String, SubsystemStatus> subsystems;
+
+        ReadyResponse(boolean ready, long uptimeMs, Map<String, Long> phases, Map<String, SubsystemStatus> subsystems) {
+            this.ready = ready;
+            this.uptimeMs = uptimeMs;
+            this.phases = phases;
+            this.subsystems = subsystems;
+        }
+    }
+
+    private static class SubsystemStatus {
+
+        final String state;
+        final Long startedAt;
+        final Long tookMs;
+        final int attempts;
+        final String error;
+
+        SubsystemStatus(String state, Long startedAt, Long tookMs, int attempts, String error) {
+            this.state = state;
+            this.startedAt = startedAt;
+            this.tookMs = tookMs;
+            this.attempts = attempts;
+            this.error = error;
+        }
+    }
+
+    private static class ErrorResponse {
+
+        final String error;
+
+        ErrorResponse(String error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.fitnessapp;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * The repositories behind the controllers, all from one backend chosen with the "storage"
+ * system property: "mongo" (the default; see mongo.uri and mongo.database) or "memory", which
+ * keeps everything on the heap and needs no external services. Nothing stored in memory
+ * survives a restart.
+ *
+ * Each repository is opened by calling its field, which may block on the database (collection
+ * checks, indexes, migrations), so controllers can open theirs in parallel after the server
+ * listens. The first successful call opens it; later calls return the same repository.
+ *
+ * The MongoDB connection pool is sized by mongo.maxPoolSize (100) and mongo.minPoolSize (0). A
+ * request waits at most mongo.maxWaitMs (120000) for a connection, and at most
+ * mongo.maxWaitQueueSize (10000) requests wait at once; the driver fails the rest straight away.
+ * The queue is sized for the thousands of requests virtual threads let in at once; the driver's
+ * own default of 500 would turn a burst into errors. Options in mongo.uri win. For load tests,
+ * storage.simulatedLatencyMs makes every in-memory repository call sleep first, as if it went
+ * over the network.
+ */
+class Storage {
+
+    final String backend;
+    final Callable<PostRepository> posts;
+    final Callable<WaterRepository> water;
+    final Callable<WorkoutRepository> workouts;
+    final Callable<BMIRepository> bmi;
+    final Callable<FoodChartRepository> foodChart;
+
+    private Storage(String backend, Callable<PostRepository> posts, Callable<WaterRepository> water,
+            Callable<WorkoutRepository> workouts, Callable<BMIRepository> bmi, Callable<FoodChartRepository> foodChart) {
+        this.backend = backend;
+        this.posts = once(posts);
+        this.water = once(water);
+        this.workouts = once(workouts);
+        this.bmi = once(bmi);
+        this.foodChart = once(foodChart);
+    }
+
+    /**
+     * Picks the backend; does not touch the database yet.
+     */
+    // maxWaitQueueSize is deprecated, but the 3.12 driver still enforces it.
+    @SuppressWarnings("deprecation")
+    static Storage fromConfig() {
+        String backend = System.getProperty("storage", "mongo");
+        switch (backend) {
+            case "mongo":
+                return mongo(MongoClients.create(MongoClientSettings.builder()
+                        .applyToConnectionPoolSettings(pool -> pool
+                                .maxSize(Integer.getInteger("mongo.maxPoolSize", 100))
+                                .minSize(Integer.getInteger("mongo.minPoolSize", 0))
+                                .maxWaitTime(Long.getLong("mongo.maxWaitMs", 120_000L), TimeUnit.MILLISECONDS)
+                                .maxWaitQueueSize(Integer.getInteger("mongo.maxWaitQueueSize", 10_000)))
+                        .applyConnectionString(new ConnectionString(System.getProperty("mongo.uri", "mongodb://localhost:27017/")))
+                        .addCommandListener(Metrics.mongoListener())
+                        .build())
+                        .getDatabase(System.getProperty("mongo.database", "fitnessApp")));
+            case "memory":
+                String seedFile = System.getProperty("foodchart.seedFile");
+                Storage storage = inMemory(() -> seedFile != null
+                        ? InMemoryFoodChartRepository.fromFile(Paths.get(seedFile))
+                        : new InMemoryFoodChartRepository());
+                long latencyMs = Long.getLong("storage.simulatedLatencyMs", 0L);
+                return latencyMs > 0 ? storage.withLatency(latencyMs) : storage;
+            default:
+                throw new IllegalArgumentException("storage must be 'mongo' or 'memory', not '" + backend + "'");
+        }
+    }
+
+    static Storage mongo(MongoDatabase database) {
+        return new Storage("mongo", () -> new MongoPostRepository(database), () -> new MongoWaterRepository(database),
+                () -> new MongoWorkoutRepository(database), () -> new MongoBMIRepository(database),
+                () -> new MongoFoodChartRepository(database));
+    }
+
+    static Storage inMemory(Callable<FoodChartRepository> foodChart) {
+        return new Storage("memory", InMemoryPostRepository::new, InMemoryWaterRepository::new,
+                InMemoryWorkoutRepository::new, InMemoryBMIRepository::new, foodChart);
+    }
+
+    Storage withLatency(long latencyMs) {
+        return new Storage(backend, delayed(PostRepository.class, posts, latencyMs),
+                delayed(WaterRepository.class, water, latencyMs),
+                delayed(WorkoutRepository.class, workouts, latencyMs),
+                delayed(BMIRepository.class, bmi, latencyMs),
+                delayed(FoodChartRepository.class, foodChart, latencyMs));
+    }
+
+    private static <T> Callable<T> once(Callable<T> open) {
+        return new Callable<T>() {
+            private T repository;
+
+            @Override
+            public synchronized T call() throws Exception {
+                if (repository == null) {
+                    repository = open.call();
+                }
+                return repository;
+            }
+        };
+    }
+
+    private static <T> Callable<T> delayed(Class<T> type, Callable<T> open, long latencyMs) {
+        return () -> delayed(type, open.call(), latencyMs);
+    }
+
+    private static <T> T delayed(Class<T> type, T repository, long latencyMs) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() != Object.class) {
+                Thread.sleep(latencyMs);
+            }
+            try {
+                return method.invoke(repository, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }));
+    }
+}
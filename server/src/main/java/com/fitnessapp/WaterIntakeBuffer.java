@@ -0,0 +1,342 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+
+/**
+ * Write-behind accumulator for water intake. Increments and resets are applied to an in-memory
+ * level and answered immediately; the coalesced changes per email are handed to the
+ * {@link WaterRepository} in one batch every flush interval, which bounds how much can be lost on
+ * a crash. Levels are cached per email, so this assumes one server instance owns the storage.
+ *
+ * Every increment is also kept as a history event of (minute of day, amount), flushed with the
+ * levels and grouped per user and day. The events and the day totals are written separately, and
+ * whichever of them fails is kept and retried on its own.
+ */
+class WaterIntakeBuffer {
+
+    private static final int STRIPES = 64;
+    static final long DAY_MS = 86_400_000L;
+
+    private final WaterRepository repository;
+    private final long idleEvictMs;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[STRIPES];
+    // History the store did not take, retried on the next flush. Replaced rather than modified,
+    // so pendingByDay() can read it while a flush runs.
+    private volatile List<WaterRepository.DayIntake> unsavedEvents = List.of();
+    private volatile List<WaterRepository.DayIntake> unsavedTotals = List.of();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "water-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    WaterIntakeBuffer(WaterRepository repository, long flushIntervalMs, long idleEvictMs) {
+        this.repository = repository;
+        this.idleEvictMs = idleEvictMs;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "water-flush-shutdown"));
+    }
+
+    int level(String email) {
+        while (true) {
+            load(email);
+            synchronized (lockFor(email)) {
+                Entry entry = entries.get(email);
+                if (entry == null) {
+                    continue; // evicted since it was loaded
+                }
+                entry.lastAccess = System.currentTimeMillis();
+                return entry.level;
+            }
+        }
+    }
+
+    int add(String email, int amount) {
+        while (true) {
+            load(email);
+            synchronized (lockFor(email)) {
+                Entry entry = entries.get(email);
+                if (entry == null) {
+                    continue; // evicted since it was loaded
+                }
+                long now = System.currentTimeMillis();
+                entry.level += amount;
+                entry.pendingDelta += amount;
+                entry.record(now, amount);
+                entry.lastAccess = now;
+                return entry.level;
+            }
+        }
+    }
+
+    /**
+     * Starts a new day for {@code email}: the current level goes back to zero while the intake
+     * history is kept.
+     */
+    void reset(String email) {
+        synchronized (lockFor(email)) {
+            Entry entry = entries.computeIfAbsent(email, k -> new Entry(0));
+            entry.level = 0;
+            entry.pendingReset = true;
+            entry.pendingDelta = 0;
+            entry.lastAccess = System.currentTimeMillis();
+            entry.resetAt = entry.lastAccess;
+        }
+    }
+
+    /**
+     * Returns the not yet flushed intake of {@code email}, keyed by the start of its UTC day.
+     */
+    Map<Long, Integer> pendingByDay(String email) {
+        Map<Long, Integer> totals = new HashMap<>();
+        synchronized (lockFor(email)) {
+            Entry entry = entries.get(email);
+            if (entry != null && entry.events != null) {
+                for (Event event : entry.events) {
+                    totals.merge(event.day, event.amount, Integer::sum);
+                }
+            }
+        }
+        for (WaterRepository.DayIntake day : unsavedTotals) {
+            if (day.email.equals(email)) {
+                totals.merge(day.day, day.total, Integer::sum);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Saves every pending change in one batch. Changes that fail to save are merged back and
+     * retried on the next flush.
+     */
+    synchronized void flush() {
+        List<Pending> batch = new ArrayList<>();
+        List<WaterRepository.LevelChange> levels = new ArrayList<>();
+        List<WaterRepository.DayIntake> days = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            String email = e.getKey();
+            synchronized (lockFor(email)) {
+                Entry entry = e.getValue();
+                if (!entry.pendingReset && entry.pendingDelta == 0 && entry.events == null) {
+                    if (entry.flushing == 0 && now - entry.lastAccess > idleEvictMs) {
+                        entries.remove(email, entry);
+                    }
+                    continue;
+                }
+                Pending pending = new Pending(email, entry, entry.pendingReset, entry.pendingDelta, entry.resetAt, entry.events);
+                entry.flushing++;
+                entry.pendingReset = false;
+                entry.pendingDelta = 0;
+                entry.events = null;
+
+                batch.add(pending);
+                levels.add(new WaterRepository.LevelChange(email, pending.reset, pending.delta, pending.resetAt, now));
+                if (pending.events != null) {
+                    addDays(email, pending.events, days);
+                }
+            }
+        }
+
+        RuntimeException failure = null;
+        if (!batch.isEmpty()) {
+            try {
+                List<Integer> rejected = repository.saveLevels(levels);
+                for (int index : rejected) {
+                    restoreLevel(batch.get(index));
+                }
+                if (!rejected.isEmpty()) {
+                    System.out.println(rejected.size() + " water level writes were rejected, will retry.");
+                }
+            } catch (RuntimeException e) {
+                for (Pending pending : batch) {
+                    restoreLevel(pending);
+                }
+                failure = e;
+            }
+        }
+
+        // History is at-least-once: when the outcome is unknown, the whole write is retried.
+        List<WaterRepository.DayIntake> events = concat(unsavedEvents, days);
+        if (!events.isEmpty()) {
+            try {
+                unsavedEvents = rejected(repository.appendEvents(events), "water history");
+            } catch (RuntimeException e) {
+                unsavedEvents = events;
+                failure = e;
+            }
+        }
+        List<WaterRepository.DayIntake> totals = concat(unsavedTotals, days);
+        if (!totals.isEmpty()) {
+            try {
+                unsavedTotals = rejected(repository.addToTotals(totals), "water daily total");
+            } catch (RuntimeException e) {
+                unsavedTotals = totals;
+                failure = e;
+            }
+        }
+
+        for (Pending pending : batch) {
+            synchronized (lockFor(pending.email)) {
+                pending.entry.flushing--;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void addDays(String email, List<Event> events, List<WaterRepository.DayIntake> days) {
+        Map<Long, List<Document>> byDay = new LinkedHashMap<>();
+        Map<Long, Integer> totals = new HashMap<>();
+        for (Event event : events) {
+            byDay.computeIfAbsent(event.day, k -> new ArrayList<>())
+                    .add(new Document("m", event.minute).append("a", event.amount));
+            totals.merge(event.day, event.amount, Integer::sum);
+        }
+        byDay.forEach((day, dayEvents) -> days.add(new WaterRepository.DayIntake(email, day, dayEvents, totals.get(day))));
+    }
+
+    private static List<WaterRepository.DayIntake> concat(List<WaterRepository.DayIntake> unsaved,
+            List<WaterRepository.DayIntake> days) {
+        if (unsaved.isEmpty()) {
+            return days;
+        }
+        List<WaterRepository.DayIntake> all = new ArrayList<>(unsaved);
+        all.addAll(days);
+        return all;
+    }
+
+    private static List<WaterRepository.DayIntake> rejected(List<WaterRepository.DayIntake> rejected, String what) {
+        if (!rejected.isEmpty()) {
+            System.out.println(rejected.size() + " " + what + " writes were rejected, will retry.");
+        }
+        return rejected;
+    }
+
+    /**
+     * Merges a change that failed to save back into the entry it was taken from, which holds
+     * whatever was added since. flush() does not evict entries with changes in flight.
+     */
+    private void restoreLevel(Pending failed) {
+        synchronized (lockFor(failed.email)) {
+            Entry entry = failed.entry;
+            if (entry.pendingReset) {
+                // A newer reset already supersedes the failed change.
+                return;
+            }
+            entry.pendingReset = failed.reset;
+            entry.resetAt = failed.resetAt;
+            entry.pendingDelta += failed.delta;
+        }
+    }
+
+    private void load(String email) {
+        if (entries.containsKey(email)) {
+            return;
+        }
+        int persisted = repository.storedLevel(email);
+        synchronized (lockFor(email)) {
+            entries.putIfAbsent(email, new Entry(persisted));
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.out.println("Water intake flush failed, will retry: " + e.getMessage());
+        }
+    }
+
+    private void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    private Object lockFor(String email) {
+        return locks[(email.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    private static class Entry {
+
+        int level;
+        int pendingDelta;
+        boolean pendingReset;
+        long resetAt;
+        List<Event> events;
+        long lastAccess = System.currentTimeMillis();
+        // Flushes saving changes taken from this entry; it is not evicted while any are.
+        int flushing;
+
+        Entry(int level) {
+            this.level = level;
+        }
+
+        void record(long timestamp, int amount) {
+            long day = timestamp - Math.floorMod(timestamp, DAY_MS);
+            int minute = (int) ((timestamp - day) / 60_000L);
+            if (events == null) {
+                events = new ArrayList<>();
+            }
+            Event last = events.isEmpty() ? null : events.get(events.size() - 1);
+            if (last != null && last.day == day && last.minute == minute) {
+                last.amount += amount;
+            } else {
+                events.add(new Event(day, minute, amount));
+            }
+        }
+    }
+
+    private static class Event {
+
+        final long day;
+        final int minute;
+        int amount;
+
+        Event(long day, int minute, int amount) {
+            this.day = day;
+            this.minute = minute;
+            this.amount = amount;
+        }
+    }
+
+    private static class Pending {
+
+        final String email;
+        final Entry entry;
+        final boolean reset;
+        final int delta;
+        final long resetAt;
+        final List<Event> events;
+
+        Pending(String email, Entry entry, boolean reset, int delta, long resetAt, List<Event> events) {
+            this.email = email;
+            this.entry = entry;
+            this.reset = reset;
+            this.delta = delta;
+            this.resetAt = resetAt;
+            this.events = events;
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package com.fitnessapp;
 
-import org.bson.Document;
-
-import com.google.gson.Gson;
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
-import static com.mongodb.client.model.Filters.eq;
-
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import spark.Request;
+import spark.Response;
 import static spark.Spark.get;
 import static spark.Spark.port;
 import static spark.Spark.post;
@@ -16,64 +20,112 @@ public class WaterReminderController {
     public static void main(String[] args) {
         port(8080);
     }
-    private static MongoCollection<Document> waterCollection;
+    private static final int MAX_HISTORY_DAYS = 366;
+    private static WaterRepository water;
+    private static WaterIntakeBuffer intakes;
+
+    public static void init(Callable<WaterRepository> repository) {
+        post("/water", WaterReminderController::addWater);
+
+        get("/water", WaterReminderController::getWater);
 
-    public static void init(MongoDatabase database) {
+        post("/water/reset", WaterReminderController::resetWater);
 
-        waterCollection = database.getCollection("waterIntakes");
+        get("/water/history", WaterReminderController::history);
 
-        post("/water", (req, res) -> {
-            Gson gson = new Gson();
-            WaterInput input = gson.fromJson(req.body(), WaterInput.class);
+        Startup.start("water", () -> connect(repository.call()), "/water");
+    }
+
+    /**
+     * Sets up storage without registering any routes.
+     */
+    static void connect(WaterRepository repository) {
+        water = repository;
+        // The flush interval is the most intake that can be lost if the process dies.
+        intakes = new WaterIntakeBuffer(repository,
+                Long.getLong("water.flushIntervalMs", 1_000L),
+                Long.getLong("water.idleEvictMs", 600_000L));
+    }
 
-            Document userRecord = waterCollection.find(eq("email", input.email)).first();
-            int waterLevel = (userRecord != null) ? userRecord.getInteger("waterLevel", 0) : 0;
-            waterLevel += input.amount;
+    static Object addWater(Request req, Response res) throws IOException {
+        WaterInput input = Json.read(req.body(), WaterInput.class);
+        String email = input == null ? null : AuthController.actingAs(req, input.email);
 
-            if (userRecord != null) {
+        if (email == null) {
+            res.status(400);
+            return "Email is required";
+        }
+
+        int waterLevel = intakes.add(email, input.amount);
+
+        return Json.write(res, new WaterResult(waterLevel));
+    }
+
+    static Object getWater(Request req, Response res) throws IOException {
+        String email = AuthController.actingAs(req, req.queryParams("email"));
+        if (email == null) {
+            res.status(400);
+            return "Email is required";
+        }
+        int waterLevel = intakes.level(email);
 
-                waterCollection.updateOne(
-                        eq("email", input.email),
-                        new Document("$set", new Document("waterLevel", waterLevel).append("timestamp", System.currentTimeMillis()))
-                );
-            } else {
+        return Json.write(res, new WaterResult(waterLevel));
+    }
 
-                Document newRecord = new Document("email", input.email)
-                        .append("waterLevel", waterLevel)
-                        .append("timestamp", System.currentTimeMillis());
-                waterCollection.insertOne(newRecord);
-            }
+    static Object resetWater(Request req, Response res) throws IOException {
+        WaterInput input = Json.read(req.body(), WaterInput.class);
+        String email = input == null ? null : AuthController.actingAs(req, input.email);
 
-            return gson.toJson(new WaterResult(waterLevel));
-        });
+        if (email == null) {
+            res.status(400);
+            return "Email is required";
+        }
 
-        get("/water", (req, res) -> {
-            String email = req.queryParams("email");
-            Document userRecord = waterCollection.find(eq("email", email)).first();
-            int waterLevel = (userRecord != null) ? userRecord.getInteger("waterLevel", 0) : 0;
+        intakes.reset(email);
 
-            return new Gson().toJson(new WaterResult(waterLevel));
-        });
+        return Json.write(res, new WaterResult(0));
+    }
 
-        post("/water/reset", (req, res) -> {
-            Gson gson = new Gson();
-            WaterInput input = gson.fromJson(req.body(), WaterInput.class);
+    static Object history(Request req, Response res) throws IOException {
+        String email = AuthController.actingAs(req, req.queryParams("email"));
+        LocalDate to;
+        LocalDate from;
+        try {
+            to = req.queryParams("to") != null ? LocalDate.parse(req.queryParams("to")) : LocalDate.now(ZoneOffset.UTC);
+            from = req.queryParams("from") != null ? LocalDate.parse(req.queryParams("from")) : to.minusDays(6);
+        } catch (DateTimeParseException e) {
+            res.status(400);
+            return "from and to must be dates (yyyy-MM-dd)";
+        }
+        if (email == null || from.isAfter(to) || from.plusDays(MAX_HISTORY_DAYS).isBefore(to)) {
+            res.status(400);
+            return "Email and a range of at most " + MAX_HISTORY_DAYS + " days are required";
+        }
 
-            if (waterCollection.find(eq("email", input.email)).first() != null) {
+        return Json.write(res, getHistory(email, from, to));
+    }
 
-                waterCollection.updateOne(
-                        eq("email", input.email),
-                        new Document("$set", new Document("waterLevel", 0).append("timestamp", System.currentTimeMillis()))
-                );
-            } else {
-                Document resetRecord = new Document("email", input.email)
-                        .append("waterLevel", 0)
-                        .append("timestamp", System.currentTimeMillis());
-                waterCollection.insertOne(resetRecord);
-            }
+    /**
+     * Daily intake sums between {@code from} and {@code to} (UTC days, inclusive), read from the
+     * daily rollups plus whatever is still waiting to be flushed.
+     */
+    private static List<DailyIntake> getHistory(String email, LocalDate from, LocalDate to) {
+        Map<Long, WaterRepository.DailyTotal> stored = water.dailyTotals(email, dayStart(from), dayStart(to));
+        Map<Long, Integer> pending = intakes.pendingByDay(email);
+
+        List<DailyIntake> history = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            long key = dayStart(day);
+            WaterRepository.DailyTotal total = stored.get(key);
+            history.add(new DailyIntake(day.toString(),
+                    (total != null ? total.total : 0) + pending.getOrDefault(key, 0),
+                    total != null ? total.entries : 0));
+        }
+        return history;
+    }
 
-            return gson.toJson(new WaterResult(0));
-        });
+    private static long dayStart(LocalDate day) {
+        return day.toEpochDay() * WaterIntakeBuffer.DAY_MS;
     }
 
     private static class WaterInput {
@@ -82,7 +134,20 @@ public class WaterReminderController {
         int amount;
     }
 
-    private static class WaterResult {
+    private static class DailyIntake {
+
+        String date;
+        int total;
+        int entries;
+
+        DailyIntake(String date, int total, int entries) {
+            this.date = date;
+            this.total = total;
+            this.entries = entries;
+        }
+    }
+
+    static class WaterResult {
 
         int waterLevel;
 
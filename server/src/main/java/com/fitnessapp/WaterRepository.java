@@ -0,0 +1,106 @@
+package com.fitnessapp;
+
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+
+/**
+ * Storage behind {@link WaterIntakeBuffer}: each user's current level, plus the intake history
+ * as per-day events and per-day totals. Days are keyed by the epoch millis of their UTC start.
+ */
+interface WaterRepository {
+
+    /**
+     * Returns the stored level of {@code email}, 0 when nothing is stored.
+     */
+    int storedLevel(String email);
+
+    /**
+     * Applies a batch of level changes and returns the indexes of the changes that were rejected,
+     * and so not applied.
+     *
+     * @throws RuntimeException when the outcome of the batch is unknown
+     */
+    List<Integer> saveLevels(List<LevelChange> changes);
+
+    /**
+     * Appends intake events to the history and returns the days the store rejected, which were
+     * not written.
+     *
+     * @throws RuntimeException when the outcome is unknown; the caller retries, so history is
+     *         at-least-once
+     */
+    List<DayIntake> appendEvents(List<DayIntake> days);
+
+    /**
+     * Adds intake to the day totals and returns the days the store rejected, which were not
+     * added.
+     *
+     * @throws RuntimeException when the outcome is unknown; the caller retries, so totals are
+     *         at-least-once
+     */
+    List<DayIntake> addToTotals(List<DayIntake> days);
+
+    /**
+     * Returns the stored totals of {@code email} for the days between {@code fromDay} and
+     * {@code toDay} (inclusive), keyed by day. Days without intake are missing.
+     */
+    Map<Long, DailyTotal> dailyTotals(String email, long fromDay, long toDay);
+
+    /**
+     * Returns the stored level document of {@code email}, or null.
+     */
+    Document levelRecord(String email);
+
+    /**
+     * The intake history of {@code email}, oldest day first: documents with email, day, events
+     * and count, read {@code batchSize} at a time. A day may span several documents.
+     */
+    Iterable<Document> history(String email, int batchSize);
+
+    class LevelChange {
+
+        final String email;
+        // A reset sets the level to delta and starts a new day at resetAt.
+        final boolean reset;
+        final int delta;
+        final long resetAt;
+        final long timestamp;
+
+        LevelChange(String email, boolean reset, int delta, long resetAt, long timestamp) {
+            this.email = email;
+            this.reset = reset;
+            this.delta = delta;
+            this.resetAt = resetAt;
+            this.timestamp = timestamp;
+        }
+    }
+
+    class DayIntake {
+
+        final String email;
+        final long day;
+        // {m: minute of day, a: amount}, oldest first
+        final List<Document> events;
+        final int total;
+
+        DayIntake(String email, long day, List<Document> events, int total) {
+            this.email = email;
+            this.day = day;
+            this.events = events;
+            this.total = total;
+        }
+    }
+
+    class DailyTotal {
+
+        final int total;
+        final int entries;
+
+        DailyTotal(int total, int entries) {
+            this.total = total;
+            this.entries = entries;
+        }
+    }
+}
@@ -1,59 +1,282 @@
 package com.fitnessapp;
 
-import org.bson.Document;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
 
-import com.google.gson.Gson;
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 
+import spark.Request;
+import spark.Response;
+import static spark.Spark.get;
 import static spark.Spark.port;
 import static spark.Spark.post;
 
 public class WorkoutController {
 
-    private static MongoCollection<Document> workoutsCollection;
+    private static final int MAX_LEADERBOARD_SIZE = 500;
+    private static final int MAX_PROGRESS_BATCH = 500;
+    private static final int MAX_REPS_PER_EVENT = 1_000;
+    private static final WorkoutSessions sessions = new WorkoutSessions(
+            Integer.getInteger("workouts.maxSessions", 200_000),
+            Long.getLong("workouts.sessionTimeoutMs", 10 * 60_000L));
+
+    private static WorkoutIngestQueue ingestQueue;
+    private static WorkoutSummaries summaries;
+    private static Leaderboard leaderboard;
 
     public static void main(String[] args) {
         port(8080);
     }
 
-    public static void init(MongoDatabase database) {
+    public static void init(Callable<WorkoutRepository> repository) {
+        post("/workouts/start", WorkoutController::startWorkout);
+
+        post("/workouts/progress", WorkoutController::progress);
+
+        post("/workouts/end", WorkoutController::endWorkout);
+
+        get("/workouts/summary", WorkoutController::summary);
 
-        workoutsCollection = database.getCollection("workouts");
+        get("/leaderboard", WorkoutController::getLeaderboard);
 
-        
-        post("/workouts/start", (req, res) -> {
-            Workout workout = new Workout("Push-up Session");  // Can be dynamically set
-            return new Gson().toJson(workout);
-        });
+        get("/leaderboard/rank", WorkoutController::getRank);
 
-        post("/workouts/end", (req, res) -> {
-            Gson gson = new Gson();
-            WorkoutResult result = gson.fromJson(req.body(), WorkoutResult.class);
+        post("/workouts/next", WorkoutController::nextWorkout);
 
-            saveWorkoutResult(result);
+        Metrics.gauge("fitsync_workout_sessions", "Workouts in progress.", sessions::size);
+        Metrics.counter("fitsync_workout_sessions_expired_total", "Workout sessions closed after going quiet.", sessions::expired);
 
-            return gson.toJson(new WorkoutResponse("Workout ended successfully"));
-        });
+        Startup.start("workouts", () -> connect(repository.call()), "/workouts", "/leaderboard");
+    }
 
-        post("/workouts/next", (req, res) -> {
-            Workout nextWorkout = new Workout("Squat Session");
-            return new Gson().toJson(nextWorkout);
-        });
+    /**
+     * Sets up storage and starts the workout writer, without registering any routes.
+     */
+    static void connect(WorkoutRepository repository) {
+        ingestQueue = new WorkoutIngestQueue(repository,
+                Integer.getInteger("workouts.queueCapacity", 10_000),
+                Integer.getInteger("workouts.batchSize", 500),
+                Long.getLong("workouts.batchDelayMs", 200L),
+                Paths.get(System.getProperty("workouts.spillFile", "workouts-spill.ndjson")));
+        summaries = new WorkoutSummaries(repository);
+        ingestQueue.addListener(summaries::recordQuietly);
+        // Summaries count each workout once, so a spill is replayed into them first. The
+        // leaderboard is seeded from them afterwards and before the writer starts, so no stored
+        // workout is counted twice or missed.
+        ingestQueue.replaySpill();
+        leaderboard = new Leaderboard();
+        for (String period : List.of(WorkoutSummaries.DAY, WorkoutSummaries.WEEK)) {
+            leaderboard.load(period, summaries.forPeriod(period, leaderboard.currentKey(period)));
+        }
+        ingestQueue.addListener(leaderboard::record);
+        ingestQueue.start();
+        sessions.open(ingestQueue::offer);
     }
 
-    private static void saveWorkoutResult(WorkoutResult result) {
+    /**
+     * Opens a workout session (see {@link WorkoutSessions}) and returns its id with the first
+     * exercise.
+     */
+    static Object startWorkout(Request req, Response res) throws IOException {
+        StartRequest request = Json.read(req.body(), StartRequest.class);
+        // The signed-in caller's email; a body naming it is only needed without a token.
+        String email = AuthController.actingAs(req, request == null ? null : request.email);
+        if (email == null || email.trim().isEmpty()) {
+            res.status(400);
+            return Json.write(res, new WorkoutResponse("Email is required"));
+        }
+
+        WorkoutSessions.Session session = sessions.start(email);
+        if (session == null) {
+            res.status(503);
+            res.header("Retry-After", "5");
+            return Json.write(res, new WorkoutResponse("Too many workouts in progress, try again shortly"));
+        }
+        return Json.write(res, new SessionResponse(session, 0));
+    }
+
+    /**
+     * Records a batch of reps for an open session, as {@code "reps": [[msSinceStart, count], ...]}.
+     * An empty batch only keeps the session alive. Batches may carry an increasing {@code seq}, so
+     * that a retried batch is not counted twice.
+     */
+    static Object progress(Request req, Response res) throws IOException {
+        ProgressRequest request = Json.read(req.body(), ProgressRequest.class);
+        if (request == null) {
+            res.status(400);
+            return Json.write(res, new WorkoutResponse("session is required"));
+        }
+        long[][] batch = request.reps == null ? new long[0][] : request.reps;
+        if (batch.length > MAX_PROGRESS_BATCH) {
+            res.status(400);
+            return Json.write(res, new WorkoutResponse("At most " + MAX_PROGRESS_BATCH + " entries per batch"));
+        }
+        for (long[] event : batch) {
+            if (event == null || event.length != 2 || event[0] < 0 || event[1] < 0 || event[1] > MAX_REPS_PER_EVENT) {
+                res.status(400);
+                return Json.write(res, new WorkoutResponse("reps entries are [msSinceStart, count] pairs"));
+            }
+        }
+
+        WorkoutSessions.Session session = sessions.touch(request.session);
+        if (session == null) {
+            res.status(404);
+            return Json.write(res, new WorkoutResponse("No workout in progress with this session"));
+        }
+        AuthController.actingAs(req, session.email);
+        int total = session.record(request.seq == null ? -1 : request.seq, batch);
+        return Json.write(res, new SessionResponse(session, total));
+    }
+
+    static Object endWorkout(Request req, Response res) throws IOException {
+        WorkoutResult result = Json.read(req.body(), WorkoutResult.class);
+
+        if (result != null && result.session != null) {
+            WorkoutSessions.Session session = sessions.touch(result.session);
+            if (session == null) {
+                res.status(404);
+                return Json.write(res, new WorkoutResponse("No workout in progress with this session"));
+            }
+            AuthController.actingAs(req, session.email);
+            if (sessions.end(session, result.duration, result.caloriesBurned) == null) {
+                res.status(429);
+                res.header("Retry-After", "1");
+                return Json.write(res, new WorkoutResponse("Too many workouts being saved, try again shortly"));
+            }
+            res.status(202);
+            return Json.write(res, new WorkoutResponse("Workout ended successfully", session.id.toHexString()));
+        }
+
+        if (result != null) {
+            result.email = AuthController.actingAs(req, result.email);
+        }
+        if (result == null || result.email == null) {
+            res.status(400);
+            return Json.write(res, new WorkoutResponse("Email is required"));
+        }
+
+        ObjectId id = saveWorkoutResult(result);
+        if (id == null) {
+            res.status(429);
+            res.header("Retry-After", "1");
+            return Json.write(res, new WorkoutResponse("Too many workouts being saved, try again shortly"));
+        }
+
+        res.status(202);
+        return Json.write(res, new WorkoutResponse("Workout ended successfully", id.toHexString()));
+    }
+
+    static Object summary(Request req, Response res) throws IOException {
+        String email = AuthController.actingAs(req, req.queryParams("email"));
+        String period = Optional.ofNullable(req.queryParams("period")).orElse(WorkoutSummaries.WEEK);
+        if (email == null || !(period.equals(WorkoutSummaries.WEEK) || period.equals(WorkoutSummaries.DAY))) {
+            res.status(400);
+            return Json.write(res, new WorkoutResponse("Email and a period of 'day' or 'week' are required"));
+        }
+
+        LocalDate to;
+        LocalDate from;
+        try {
+            to = req.queryParams("to") != null ? LocalDate.parse(req.queryParams("to")) : LocalDate.now(ZoneOffset.UTC);
+            from = req.queryParams("from") != null ? LocalDate.parse(req.queryParams("from"))
+                    : period.equals(WorkoutSummaries.WEEK) ? to.minusWeeks(11) : to.minusDays(29);
+        } catch (DateTimeParseException e) {
+            res.status(400);
+            return Json.write(res, new WorkoutResponse("from and to must be dates (yyyy-MM-dd)"));
+        }
+
+        return Json.write(res, getSummary(email, period, from, to));
+    }
+
+    static Object getLeaderboard(Request req, Response res) throws IOException {
+        String period = Optional.ofNullable(req.queryParams("period")).orElse(WorkoutSummaries.WEEK);
+        int top;
         try {
-            Document workoutDoc = new Document("email", result.email)
-                    .append("duration", result.duration)
-                    .append("caloriesBurned", result.caloriesBurned)
-                    .append("timestamp", System.currentTimeMillis());
-            workoutsCollection.insertOne(workoutDoc);
-            System.out.println("Workout saved to database.");
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.out.println("Failed to save workout to database.");
+            top = Math.max(1, Math.min(MAX_LEADERBOARD_SIZE,
+                    Integer.parseInt(Optional.ofNullable(req.queryParams("top")).orElse("50"))));
+        } catch (NumberFormatException e) {
+            top = -1;
+        }
+        if (!Leaderboard.supports(period) || top < 0) {
+            res.status(400);
+            return Json.write(res, new WorkoutResponse("period must be 'day' or 'week' and top a number"));
+        }
+
+        String email = AuthController.actingAs(req, req.queryParams("email"));
+        return Json.write(res, new LeaderboardResponse(period, leaderboard.currentKey(period),
+                leaderboard.top(period, top), email != null ? leaderboard.rank(period, email) : null));
+    }
+
+    static Object getRank(Request req, Response res) throws IOException {
+        String period = Optional.ofNullable(req.queryParams("period")).orElse(WorkoutSummaries.WEEK);
+        String email = AuthController.actingAs(req, req.queryParams("email"));
+        if (!Leaderboard.supports(period) || email == null) {
+            res.status(400);
+            return Json.write(res, new WorkoutResponse("Email and a period of 'day' or 'week' are required"));
+        }
+
+        Leaderboard.Entry entry = leaderboard.rank(period, email);
+        if (entry == null) {
+            res.status(404);
+            return Json.write(res, new WorkoutResponse("No workouts this " + period));
+        }
+        return Json.write(res, entry);
+    }
+
+    /**
+     * Moves the session given as {@code session} on to its next exercise; without one, just names
+     * the exercise after the first.
+     */
+    static Object nextWorkout(Request req, Response res) throws IOException {
+        NextRequest request = Json.read(req.body(), NextRequest.class);
+        if (request == null || request.session == null) {
+            return Json.write(res, new Workout(WorkoutSessions.EXERCISES.get(1)));
+        }
+        WorkoutSessions.Session session = sessions.touch(request.session);
+        if (session == null) {
+            res.status(404);
+            return Json.write(res, new WorkoutResponse("No workout in progress with this session"));
+        }
+        AuthController.actingAs(req, session.email);
+        return Json.write(res, new Workout(session.next()));
+    }
+
+    /**
+     * Queues the result for the background writer and returns its id, or null when the queue is
+     * full.
+     */
+    private static ObjectId saveWorkoutResult(WorkoutResult result) {
+        ObjectId id = new ObjectId();
+        Document workoutDoc = new Document("_id", id)
+                .append("email", result.email)
+                .append("duration", result.duration)
+                .append("caloriesBurned", result.caloriesBurned)
+                .append("timestamp", System.currentTimeMillis());
+        return ingestQueue.offer(workoutDoc) ? id : null;
+    }
+
+    private static WorkoutSummary getSummary(String email, String period, LocalDate from, LocalDate to) {
+        List<Document> found = period.equals(WorkoutSummaries.WEEK)
+                ? summaries.find(email, period, WorkoutSummaries.weekKey(from), WorkoutSummaries.weekKey(to))
+                : summaries.find(email, period, WorkoutSummaries.dayKey(from), WorkoutSummaries.dayKey(to));
+
+        List<SummaryBucket> buckets = new ArrayList<>(found.size());
+        for (Document doc : found) {
+            buckets.add(new SummaryBucket(doc.getString("key"),
+                    doc.get("calories", Number.class).doubleValue(),
+                    doc.get("duration", Number.class).intValue(),
+                    doc.get("count", Number.class).intValue()));
         }
+        int[] streak = summaries.streak(email, LocalDate.now(ZoneOffset.UTC));
+        return new WorkoutSummary(period, streak[0], streak[1], buckets);
     }
 
     private static class Workout {
@@ -65,19 +288,105 @@ public class WorkoutController {
         }
     }
 
+    private static class StartRequest {
+
+        String email;
+    }
+
+    private static class ProgressRequest {
+
+        String session;
+        Long seq;
+        long[][] reps;
+    }
+
+    private static class NextRequest {
+
+        String session;
+    }
+
+    private static class SessionResponse {
+
+        String session;
+        String name;
+        long startedAt;
+        int reps;
+        long timeoutMs;
+
+        SessionResponse(WorkoutSessions.Session session, int reps) {
+            this.session = session.id.toHexString();
+            this.name = session.exercise();
+            this.startedAt = session.startedAt;
+            this.reps = reps;
+            this.timeoutMs = sessions.timeoutMs();
+        }
+    }
+
     private static class WorkoutResult {
 
+        String session;
         String email;
         int duration;
         double caloriesBurned;
     }
 
+    private static class WorkoutSummary {
+
+        String period;
+        int currentStreak;
+        int longestStreak;
+        List<SummaryBucket> buckets;
+
+        WorkoutSummary(String period, int currentStreak, int longestStreak, List<SummaryBucket> buckets) {
+            this.period = period;
+            this.currentStreak = currentStreak;
+            this.longestStreak = longestStreak;
+            this.buckets = buckets;
+        }
+    }
+
+    private static class SummaryBucket {
+
+        String key;
+        double caloriesBurned;
+        int duration;
+        int count;
+
+        SummaryBucket(String key, double caloriesBurned, int duration, int count) {
+            this.key = key;
+            this.caloriesBurned = caloriesBurned;
+            this.duration = duration;
+            this.count = count;
+        }
+    }
+
+    private static class LeaderboardResponse {
+
+        String period;
+        String key;
+        List<Leaderboard.Entry> entries;
+        Leaderboard.Entry me;
+
+        LeaderboardResponse(String period, String key, List<Leaderboard.Entry> entries, Leaderboard.Entry me) {
+            this.period = period;
+            this.key = key;
+            this.entries = entries;
+            this.me = me;
+        }
+    }
+
     private static class WorkoutResponse {
 
         String message;
+        String id;
 
         WorkoutResponse(String message) {
             this.message = message;
         }
+
+        WorkoutResponse(String message, String id) {
+            this.message = message;
+            this.id = id;
+        }
     }
 }
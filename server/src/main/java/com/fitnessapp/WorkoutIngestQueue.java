@@ -0,0 +1,216 @@
+package com.fitnessapp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.bson.Document;
+
+/**
+ * Bounded queue in front of the {@link WorkoutRepository}. Request threads only enqueue; a single
+ * writer thread drains the queue into batches, cut when either {@code batchSize} documents are
+ * waiting or {@code maxDelayMs} has passed since the first one.
+ *
+ * Every document carries its {@code _id} from the start, so retrying a batch is idempotent:
+ * the repository skips what an earlier, partially applied attempt stored. Batches that still
+ * fail after the retries are appended to a spill file (one JSON document per line), which is
+ * replayed by {@link #replaySpill()} before the queue starts.
+ *
+ * Listeners see each batch once it is stored, including documents an earlier attempt or run had
+ * already written, so a replayed batch can be seen twice and listeners that persist anything must
+ * be idempotent by {@code _id}. They run on the writer thread, so they should be quick, and the
+ * list is reused once they return.
+ */
+class WorkoutIngestQueue {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MS = 500;
+
+    private final WorkoutRepository repository;
+    private final BlockingQueue<Document> queue;
+    private final int batchSize;
+    private final long maxDelayMs;
+    private final Path spillFile;
+    private final Thread writer;
+    private final List<Consumer<List<Document>>> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+
+    WorkoutIngestQueue(WorkoutRepository repository, int capacity, int batchSize, long maxDelayMs, Path spillFile) {
+        this.repository = repository;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.maxDelayMs = maxDelayMs;
+        this.spillFile = spillFile;
+        this.writer = new Thread(this::run, "workout-writer");
+        this.writer.setDaemon(true);
+    }
+
+    void addListener(Consumer<List<Document>> listener) {
+        listeners.add(listener);
+    }
+
+    void start() {
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "workout-writer-shutdown"));
+    }
+
+    /**
+     * Queues a workout for writing; returns false when the queue is full.
+     */
+    boolean offer(Document workout) {
+        return running && queue.offer(workout);
+    }
+
+    int depth() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<Document> batch = new ArrayList<>(batchSize);
+        boolean interrupted = false;
+        while (running || !queue.isEmpty()) {
+            try {
+                Document first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Document next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                // shutdown() interrupts a waiting writer. What the batch already took off the queue
+                // was acknowledged, so it is written (or spilled) before looping round to drain the
+                // rest; the flag is restored once the queue is empty.
+                interrupted = true;
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(List<Document> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                repository.insert(batch);
+                for (Consumer<List<Document>> listener : listeners) {
+                    try {
+                        listener.accept(batch);
+                    } catch (RuntimeException e) {
+                        System.out.println("Workout listener failed: " + e.getMessage());
+                    }
+                }
+                return;
+            } catch (RuntimeException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    System.out.println("Failed to save " + batch.size() + " workouts, spilling to " + spillFile + ": " + e.getMessage());
+                    spill(batch);
+                    return;
+                }
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MS * attempt);
+                } catch (InterruptedException interrupted) {
+                    // Shutting down: keep the batch for the next start rather than waiting.
+                    spill(batch);
+                    return;
+                }
+            }
+        }
+    }
+
+    private synchronized void spill(List<Document> batch) {
+        try (BufferedWriter out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Document workout : batch) {
+                out.write(workout.toJson());
+                out.newLine();
+            }
+        } catch (IOException e) {
+            System.out.println("Could not write workout spill file, " + batch.size() + " workouts lost: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Re-inserts workouts spilled by an earlier run, on the calling thread; call before
+     * {@link #start()}. The file is moved aside first so anything that fails again is spilled
+     * afresh; a replay interrupted by a crash is simply run again, which is safe because inserts
+     * are idempotent.
+     */
+    void replaySpill() {
+        Path replaying = spillFile.resolveSibling(spillFile.getFileName() + ".replaying");
+        try {
+            if (!Files.exists(replaying)) {
+                if (!Files.exists(spillFile)) {
+                    return;
+                }
+                Files.move(spillFile, replaying);
+            }
+            List<Document> batch = new ArrayList<>(batchSize);
+            int replayed = 0;
+            try (BufferedReader in = Files.newBufferedReader(replaying, StandardCharsets.UTF_8)) {
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    batch.add(Document.parse(line));
+                    if (batch.size() == batchSize) {
+                        write(batch);
+                        replayed += batch.size();
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                replayed += batch.size();
+            }
+            Files.delete(replaying);
+            System.out.println("Replayed " + replayed + " spilled workouts.");
+        } catch (IOException e) {
+            System.out.println("Could not replay workout spill file: " + e.getMessage());
+        }
+    }
+
+    private void shutdown() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            List<Document> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            spill(remaining);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.fitnessapp;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+import org.bson.Document;
+
+/**
+ * Storage for workouts and the totals kept up to date from them (see {@link WorkoutSummaries}).
+ */
+interface WorkoutRepository {
+
+    /**
+     * Stores a batch of workouts, each carrying its {@code _id}, skipping those already stored;
+     * storing a batch again is harmless.
+     *
+     * @throws RuntimeException when the batch could not be stored, in which case some of it may
+     *         have been
+     */
+    void insert(List<Document> workouts);
+
+    /**
+     * Adds the totals to the stored summaries, counting each workout {@code _id} once per
+     * summary, and extends each user's streak with their active days (epoch days, ascending).
+     * Adding the same totals again is harmless.
+     */
+    void addSummaries(Collection<WorkoutSummaries.Totals> totals, Map<String, SortedSet<Long>> activeDays);
+
+    /**
+     * Returns the summaries of {@code email} with keys between {@code fromKey} and {@code toKey}
+     * (inclusive), ordered by key; documents with key, calories, duration and count.
+     */
+    List<Document> summaries(String email, String period, String fromKey, String toKey);
+
+    /**
+     * Every user's summary for one period key; documents with at least email and calories.
+     */
+    Iterable<Document> summariesFor(String period, String key);
+
+    /**
+     * Returns the stored streak of {@code email} (lastDay, current, longest), or null when the
+     * user never worked out.
+     */
+    Document streak(String email);
+
+    /**
+     * Every workout of {@code email}, read {@code batchSize} at a time.
+     */
+    Iterable<Document> workouts(String email, int batchSize);
+}
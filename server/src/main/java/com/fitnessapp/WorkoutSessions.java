@@ -0,0 +1,230 @@
+package com.fitnessapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * Workouts in progress. A session is opened by POST /workouts/start, hears about reps in batches
+ * while the workout runs (an empty batch is a heartbeat) and becomes a stored workout on POST
+ * /workouts/end, under the session's id.
+ *
+ * A session is a fixed set of counters however long the workout, so memory grows with the number
+ * of open sessions only, which is capped at {@code maxSessions}. Sessions not heard from for
+ * {@code timeoutMs} are swept up; those that counted reps are stored as abandoned workouts, so
+ * the reps are not lost.
+ */
+class WorkoutSessions {
+
+    static final List<String> EXERCISES = List.of("Push-up Session", "Squat Session");
+
+    private final Map<ObjectId, Session> sessions = new ConcurrentHashMap<>();
+    private final int maxSessions;
+    private final long timeoutMs;
+    private final LongAdder expired = new LongAdder();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "workout-sessions-sweep");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Hands a finished workout to storage; false when it cannot take it right now.
+    private volatile Predicate<Document> store;
+    private boolean sweeping;
+
+    WorkoutSessions(int maxSessions, long timeoutMs) {
+        this.maxSessions = maxSessions;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Sets where finished workouts go and starts sweeping abandoned sessions.
+     */
+    synchronized void open(Predicate<Document> store) {
+        this.store = store;
+        if (!sweeping) {
+            long interval = Math.max(1_000, Math.min(30_000, timeoutMs / 4));
+            sweeper.scheduleWithFixedDelay(this::sweepQuietly, interval, interval, TimeUnit.MILLISECONDS);
+            sweeping = true;
+        }
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    long expired() {
+        return expired.sum();
+    }
+
+    long timeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * Opens a session for {@code email}, or returns null when {@code maxSessions} are open.
+     */
+    Session start(String email) {
+        if (sessions.size() >= maxSessions) {
+            return null;
+        }
+        Session session = new Session(new ObjectId(), email, System.currentTimeMillis());
+        sessions.put(session.id, session);
+        return session;
+    }
+
+    /**
+     * Returns the open session {@code id}, keeping it alive, or null.
+     */
+    Session touch(String id) {
+        Session session = id == null || !ObjectId.isValid(id) ? null : sessions.get(new ObjectId(id));
+        if (session != null) {
+            session.lastSeenAt = System.currentTimeMillis();
+        }
+        return session;
+    }
+
+    /**
+     * Stores the session as a workout and closes it. Returns the workout, or null when storage
+     * cannot take it now, in which case the session stays open.
+     */
+    Document end(Session session, int duration, double caloriesBurned) {
+        Document workout;
+        synchronized (session) {
+            if (session.ended) {
+                return null;
+            }
+            int seconds = duration > 0 ? duration
+                    : (int) ((System.currentTimeMillis() - session.startedAt) / 1000);
+            workout = session.toWorkout(seconds, caloriesBurned);
+            if (!store.test(workout)) {
+                return null;
+            }
+            session.ended = true;
+        }
+        sessions.remove(session.id, session);
+        return workout;
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            System.out.println("Workout session sweep failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes every session idle since before {@code now - timeoutMs}.
+     */
+    void sweep(long now) {
+        for (Session session : sessions.values()) {
+            if (now - session.lastSeenAt <= timeoutMs) {
+                continue;
+            }
+            synchronized (session) {
+                if (session.ended || now - session.lastSeenAt <= timeoutMs) {
+                    continue;
+                }
+                if (session.totalReps() > 0) {
+                    int seconds = (int) (Math.max(session.lastRepOffsetMs, session.lastSeenAt - session.startedAt) / 1000);
+                    Document workout = session.toWorkout(seconds, 0).append("abandoned", true);
+                    if (!store.test(workout)) {
+                        // Storage is backed up; try again on the next sweep.
+                        continue;
+                    }
+                }
+                session.ended = true;
+            }
+            sessions.remove(session.id, session);
+            expired.increment();
+        }
+    }
+
+    /**
+     * One workout in progress. Counters are guarded by the session's monitor.
+     */
+    static class Session {
+
+        final ObjectId id;
+        final String email;
+        final long startedAt;
+        volatile long lastSeenAt;
+        // Reps per exercise, indexed like EXERCISES.
+        private final int[] reps = new int[EXERCISES.size()];
+        private int exercise;
+        private long lastSequence = -1;
+        private long lastRepOffsetMs;
+        private boolean ended;
+
+        Session(ObjectId id, String email, long startedAt) {
+            this.id = id;
+            this.email = email;
+            this.startedAt = startedAt;
+            this.lastSeenAt = startedAt;
+        }
+
+        /**
+         * Adds a batch of reps of the current exercise, given as (milliseconds since the start,
+         * reps) pairs, and returns the session's total. A batch whose {@code sequence} was
+         * already seen is a retry and is not counted again; -1 means unnumbered.
+         */
+        synchronized int record(long sequence, long[][] batch) {
+            if (ended || (sequence >= 0 && sequence <= lastSequence)) {
+                return totalReps();
+            }
+            if (sequence >= 0) {
+                lastSequence = sequence;
+            }
+            for (long[] event : batch) {
+                lastRepOffsetMs = Math.max(lastRepOffsetMs, event[0]);
+                reps[exercise] += (int) event[1];
+            }
+            return totalReps();
+        }
+
+        /**
+         * Moves on to the next exercise and returns its name.
+         */
+        synchronized String next() {
+            exercise = (exercise + 1) % EXERCISES.size();
+            return EXERCISES.get(exercise);
+        }
+
+        synchronized String exercise() {
+            return EXERCISES.get(exercise);
+        }
+
+        synchronized int totalReps() {
+            int total = 0;
+            for (int count : reps) {
+                total += count;
+            }
+            return total;
+        }
+
+        private Document toWorkout(int duration, double caloriesBurned) {
+            List<Document> sets = new ArrayList<>(reps.length);
+            for (int i = 0; i < reps.length; i++) {
+                if (reps[i] > 0) {
+                    sets.add(new Document("exercise", EXERCISES.get(i)).append("reps", reps[i]));
+                }
+            }
+            return new Document("_id", id)
+                    .append("email", email)
+                    .append("duration", duration)
+                    .append("caloriesBurned", caloriesBurned)
+                    .append("reps", totalReps())
+                    .append("sets", sets)
+                    .append("timestamp", System.currentTimeMillis());
+        }
+    }
+}
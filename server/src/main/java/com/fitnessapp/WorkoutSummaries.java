@@ -0,0 +1,133 @@
+package com.fitnessapp;
+
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.bson.Document;
+
+/**
+ * Pre-aggregated workout totals per user, kept up to date from the stream of stored workouts.
+ *
+ * There is one summary per (email, period, key), where period is "day" (key yyyy-MM-dd) or
+ * "week" (key yyyy-Www, ISO weeks), with summed calories, duration and count, and one streak per
+ * user with the last active day and the current and longest run of consecutive active days.
+ * Days are UTC. Summaries count each workout {@code _id} once, so the same workouts may be
+ * recorded again.
+ */
+class WorkoutSummaries {
+
+    static final String DAY = "day";
+    static final String WEEK = "week";
+    private static final int MAX_UNRECORDED = 100_000;
+
+    private final WorkoutRepository repository;
+    // Workouts whose summary update failed, recorded again with the next batch. Only touched by
+    // recordQuietly(), on the workout writer thread.
+    private List<Document> unrecorded = new ArrayList<>();
+
+    WorkoutSummaries(WorkoutRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Folds newly stored workouts into the summaries and streaks.
+     */
+    void record(List<Document> workouts) {
+        Map<String, Totals> totals = new LinkedHashMap<>();
+        Map<String, SortedSet<Long>> activeDays = new LinkedHashMap<>();
+
+        for (Document workout : workouts) {
+            String email = workout.getString("email");
+            LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(workout.getLong("timestamp"), WaterIntakeBuffer.DAY_MS));
+            double calories = workout.get("caloriesBurned", Number.class).doubleValue();
+            int duration = workout.get("duration", Number.class).intValue();
+
+            totals.computeIfAbsent(email + '\n' + DAY + '\n' + dayKey(day), k -> new Totals(email, DAY, dayKey(day)))
+                    .add(workout.get("_id"), calories, duration);
+            totals.computeIfAbsent(email + '\n' + WEEK + '\n' + weekKey(day), k -> new Totals(email, WEEK, weekKey(day)))
+                    .add(workout.get("_id"), calories, duration);
+            activeDays.computeIfAbsent(email, k -> new TreeSet<>()).add(day.toEpochDay());
+        }
+
+        repository.addSummaries(totals.values(), activeDays);
+    }
+
+    List<Document> find(String email, String period, String fromKey, String toKey) {
+        return repository.summaries(email, period, fromKey, toKey);
+    }
+
+    /**
+     * Every user's summary for one period key, e.g. the current week.
+     */
+    Iterable<Document> forPeriod(String period, String key) {
+        return repository.summariesFor(period, key);
+    }
+
+    /**
+     * Returns {current, longest}; the current streak counts as broken once a whole day has
+     * passed without a workout.
+     */
+    int[] streak(String email, LocalDate today) {
+        Document streak = repository.streak(email);
+        if (streak == null) {
+            return new int[]{0, 0};
+        }
+        long lastDay = streak.get("lastDay", Number.class).longValue();
+        int current = today.toEpochDay() - lastDay > 1 ? 0 : streak.get("current", Number.class).intValue();
+        return new int[]{current, streak.get("longest", Number.class).intValue()};
+    }
+
+    /**
+     * Records {@code workouts}, together with any whose update failed before. Failures are kept
+     * for the next call rather than thrown; past {@code MAX_UNRECORDED} the oldest are dropped.
+     */
+    void recordQuietly(List<Document> workouts) {
+        List<Document> pending = new ArrayList<>(unrecorded);
+        pending.addAll(workouts);
+        try {
+            record(pending);
+            unrecorded = new ArrayList<>();
+        } catch (RuntimeException e) {
+            int dropped = Math.max(0, pending.size() - MAX_UNRECORDED);
+            unrecorded = new ArrayList<>(pending.subList(dropped, pending.size()));
+            System.out.println("Failed to update workout summaries for " + pending.size() + " workouts, will retry"
+                    + (dropped > 0 ? " (dropped the oldest " + dropped + ")" : "") + ": " + e.getMessage());
+        }
+    }
+
+    static String dayKey(LocalDate day) {
+        return day.toString();
+    }
+
+    static String weekKey(LocalDate day) {
+        return String.format("%d-W%02d", day.get(IsoFields.WEEK_BASED_YEAR), day.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+    }
+
+    /**
+     * One user's workouts in one period, to be added to its summary.
+     */
+    static class Totals {
+
+        final String email;
+        final String period;
+        final String key;
+        // {i: workout _id, c: calories, d: duration}
+        final List<Document> workouts = new ArrayList<>();
+
+        Totals(String email, String period, String key) {
+            this.email = email;
+            this.period = period;
+            this.key = key;
+        }
+
+        void add(Object id, double calories, int duration) {
+            workouts.add(new Document("i", id).append("c", calories).append("d", duration));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.fitnessapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Thousands of likes and comments racing on one post: none may be lost or counted twice.
+ */
+class PostLikesTest {
+
+    private static final int THREADS = 16;
+    private static final int USERS = 5_000;
+    private static final String POST_ID = "hot";
+
+    private final PostRepository posts = new InMemoryPostRepository();
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() {
+        posts.insert(new Document("id", POST_ID)
+                .append("text", "Leg day")
+                .append("email", "author@example.com")
+                .append("likes", new ArrayList<String>())
+                .append("likeCount", 0)
+                .append("comments", new ArrayList<Document>())
+                .append("commentCount", 0));
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void concurrentLikesFromDistinctUsersAreAllCounted() throws Exception {
+        int accepted = race(USERS, n -> posts.addLike(POST_ID, "fan" + n + "@example.com") != null);
+
+        Document post = posts.find(POST_ID);
+        List<String> likes = post.getList("likes", String.class);
+        assertEquals(USERS, accepted);
+        assertEquals(USERS, (int) post.getInteger("likeCount"));
+        assertEquals(USERS, likes.size());
+        assertEquals(USERS, new HashSet<>(likes).size());
+    }
+
+    @Test
+    void repeatedLikesAreCountedOnce() throws Exception {
+        int accepted = race(USERS, n -> posts.addLike(POST_ID, "fan" + n % 100 + "@example.com") != null);
+
+        Document post = posts.find(POST_ID);
+        assertEquals(100, accepted);
+        assertEquals(100, (int) post.getInteger("likeCount"));
+        assertEquals(100, post.getList("likes", String.class).size());
+    }
+
+    @Test
+    void concurrentCommentsAreAllKept() throws Exception {
+        race(USERS, n -> posts.addComment(POST_ID, new Document("id", "c" + n)
+                .append("text", "Nice")
+                .append("email", "fan" + n + "@example.com")) != null);
+
+        assertEquals(USERS, (int) posts.find(POST_ID).getInteger("commentCount"));
+        HashSet<String> paged = new HashSet<>();
+        for (PostRepository.CommentBucket bucket = posts.comments(POST_ID, null); bucket != null;
+                bucket = posts.comments(POST_ID, bucket.bucket)) {
+            for (Document comment : bucket.comments) {
+                paged.add(comment.getString("id"));
+            }
+        }
+        assertEquals(USERS, paged.size());
+    }
+
+    /**
+     * Runs {@code action} for 0 until {@code n} across the pool, all released at once, and
+     * returns how many calls returned true.
+     */
+    private int race(int n, Action action) throws Exception {
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Boolean>> calls = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int user = i;
+            Callable<Boolean> call = () -> {
+                go.await();
+                return action.run(user);
+            };
+            calls.add(pool.submit(call));
+        }
+        go.countDown();
+        int accepted = 0;
+        for (Future<Boolean> call : calls) {
+            if (call.get(30, TimeUnit.SECONDS)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    private interface Action {
+
+        boolean run(int n);
+    }
+}